@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the benchmarks with the allocation profiler.
+ * The usual JMH command line options are supported, for example
+ * {@code -p nbNodes=100,1000} to restrict the cluster sizes.
+ *
+ * @author Fabien Hermenier
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options opts = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opts).run();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker.bench;
+
+import btrplace.rpMaker.ConfigurationAlterer;
+import btrplace.rpMaker.ConfigurationFork;
+import btrplace.rpMaker.ConstraintIndex;
+import btrplace.rpMaker.LoadReport;
+import entropy.configuration.Configuration;
+import entropy.configuration.ManagedElementSet;
+import entropy.configuration.VirtualMachine;
+import entropy.vjob.VJob;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link ConfigurationAlterer}.
+ *
+ * @author Fabien Hermenier
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConfigurationAltererBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int nbNodes;
+
+    private List<VJob> vjobs;
+
+    private Configuration cfg;
+
+    private ConstraintIndex idx;
+
+    private ManagedElementSet<VirtualMachine> vms;
+
+    private Random rnd;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        vjobs = Fixtures.makeVJobs(nbNodes * Fixtures.VMS_PER_NODE);
+        cfg = Fixtures.makeConfiguration(nbNodes, vjobs);
+        idx = new ConstraintIndex(vjobs);
+        vms = cfg.getAllVirtualMachines();
+        rnd = new Random(42);
+    }
+
+    @Benchmark
+    public boolean relocate() {
+        VirtualMachine vm = vms.get(rnd.nextInt(vms.size()));
+        return ConfigurationAlterer.relocate(cfg, vm, vjobs, 10, rnd);
+    }
+
+    @Benchmark
+    public Configuration shuffle() {
+        ConfigurationAlterer.shuffle(cfg, idx, 100, rnd);
+        return cfg;
+    }
+
+    @Benchmark
+    public double getCPUConsumptionLoad() {
+        return ConfigurationAlterer.getCPUConsumptionLoad(cfg);
+    }
+
+    @Benchmark
+    public double getCPUDemandLoad() {
+        return ConfigurationAlterer.getCPUDemandLoad(cfg);
+    }
+
+    @Benchmark
+    public double getMemoryConsumptionLoad() {
+        return ConfigurationAlterer.getMemoryConsumptionLoad(cfg);
+    }
+
+    @Benchmark
+    public LoadReport getLoadReport() {
+        return ConfigurationAlterer.getLoadReport(cfg);
+    }
+
+    /**
+     * The failures are destructive, so each invocation works on its own fork of the configuration.
+     */
+    @State(Scope.Thread)
+    public static class Failures {
+
+        @Param({"100", "1000", "10000", "100000"})
+        public int nbNodes;
+
+        private Configuration cfg;
+
+        private Random rnd = new Random(42);
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            cfg = Fixtures.makeConfiguration(nbNodes, Fixtures.makeVJobs(nbNodes * Fixtures.VMS_PER_NODE));
+        }
+    }
+
+    @Benchmark
+    public ManagedElementSet<VirtualMachine> applyNodeFailureRatio(Failures f) {
+        return ConfigurationAlterer.applyNodeFailureRatio(new ConfigurationFork(f.cfg), 0.1, f.rnd);
+    }
+}
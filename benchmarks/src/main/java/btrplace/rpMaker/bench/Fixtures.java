@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker.bench;
+
+import entropy.configuration.*;
+import entropy.vjob.DefaultVJob;
+import entropy.vjob.VJob;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tools to build the inputs of the benchmarks.
+ *
+ * @author Fabien Hermenier
+ */
+final class Fixtures {
+
+    /**
+     * The number of VMs per node.
+     */
+    static final int VMS_PER_NODE = 4;
+
+    /**
+     * The number of VMs per vjob.
+     */
+    static final int VMS_PER_VJOB = 10;
+
+    private Fixtures() {
+    }
+
+    static ManagedElementSet<Node> makeNodes(int nb) {
+        ManagedElementSet<Node> ns = new SimpleManagedElementSet<Node>();
+        for (int i = 0; i < nb; i++) {
+            ns.add(new SimpleNode("N" + i, 4, 100, 100));
+        }
+        return ns;
+    }
+
+    static List<VJob> makeVJobs(int nbVMs) {
+        List<VJob> vjobs = new ArrayList<VJob>();
+        VJob v = null;
+        for (int i = 0; i < nbVMs; i++) {
+            if (i % VMS_PER_VJOB == 0) {
+                v = new DefaultVJob("vjob" + vjobs.size());
+                vjobs.add(v);
+            }
+            VirtualMachine vm = new SimpleVirtualMachine("VM" + i, 1, 10, 10);
+            vm.setCPUDemand(15);
+            vm.setCPUMax(20);
+            v.addVirtualMachine(vm);
+        }
+        return vjobs;
+    }
+
+    /**
+     * Make a configuration with {@link #VMS_PER_NODE} running VMs per node.
+     *
+     * @param nbNodes the number of online nodes
+     * @param vjobs   the vjobs that contain the VMs to place
+     * @return the configuration
+     */
+    static Configuration makeConfiguration(int nbNodes, List<VJob> vjobs) {
+        Configuration cfg = new SimpleConfiguration();
+        ManagedElementSet<Node> ns = makeNodes(nbNodes);
+        for (Node n : ns) {
+            cfg.addOnline(n);
+        }
+        int i = 0;
+        for (VJob v : vjobs) {
+            for (VirtualMachine vm : v.getVirtualMachines()) {
+                cfg.setRunOn(vm, ns.get(i++ % nbNodes));
+            }
+        }
+        return cfg;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker.bench;
+
+import btrplace.rpMaker.Generator;
+import entropy.configuration.Configuration;
+import entropy.configuration.ManagedElementSet;
+import entropy.configuration.Node;
+import entropy.configuration.SimpleManagedElementSet;
+import entropy.plan.choco.ChocoCustomRP;
+import entropy.plan.choco.constraint.pack.SatisfyDemandingSlicesHeightsFastBP;
+import entropy.plan.durationEvaluator.MockDurationEvaluator;
+import entropy.vjob.VJob;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link Generator}.
+ * The plan module does not scale to the largest cluster sizes so they are
+ * limited to 10k nodes.
+ *
+ * @author Fabien Hermenier
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GeneratorBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int nbNodes;
+
+    private ManagedElementSet<Node> onlines;
+
+    private ManagedElementSet<Node> offlines;
+
+    private List<VJob> vjobs;
+
+    private ChocoCustomRP rp;
+
+    @Setup
+    public void setup() {
+        onlines = Fixtures.makeNodes(nbNodes);
+        offlines = new SimpleManagedElementSet<Node>();
+        vjobs = Fixtures.makeVJobs(nbNodes * Fixtures.VMS_PER_NODE);
+        rp = new ChocoCustomRP(new MockDurationEvaluator(1, 1, 1, 1, 1, 1, 1, 1, 1));
+        rp.setPackingConstraintClass(new SatisfyDemandingSlicesHeightsFastBP());
+    }
+
+    @Benchmark
+    public Configuration generate() {
+        return Generator.generate(rp, onlines, offlines, vjobs);
+    }
+
+    @Benchmark
+    public Configuration quickGenerate() {
+        return Generator.quickGenerate(rp, onlines, offlines, vjobs);
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker.bench;
+
+import btrplace.rpMaker.VJobAlterer;
+import entropy.configuration.ResourcePicker;
+import entropy.vjob.VJob;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link VJobAlterer}.
+ *
+ * @author Fabien Hermenier
+ * @see VJobTemplateBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VJobBenchmark {
+
+    /**
+     * The number of nodes the VMs would be hosted on.
+     */
+    @Param({"100", "1000", "10000", "100000"})
+    public int nbNodes;
+
+    private List<VJob> vjobs;
+
+    @Setup
+    public void setup() {
+        vjobs = Fixtures.makeVJobs(nbNodes * Fixtures.VMS_PER_NODE);
+    }
+
+    @Benchmark
+    public int[] getResourceSum() {
+        return VJobAlterer.getResourceSum(vjobs, ResourcePicker.VMRc.cpuConsumption, ResourcePicker.VMRc.cpuDemand, ResourcePicker.VMRc.memoryConsumption);
+    }
+}
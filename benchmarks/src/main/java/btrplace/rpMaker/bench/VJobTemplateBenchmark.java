@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker.bench;
+
+import btrplace.rpMaker.DefaultVJobTemplate;
+import entropy.vjob.VJob;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link DefaultVJobTemplate}.
+ * The cost only depends on the size of the template, not on the size of the datacenter.
+ *
+ * @author Fabien Hermenier
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VJobTemplateBenchmark {
+
+    private DefaultVJobTemplate template;
+
+    @Setup
+    public void setup() {
+        template = new DefaultVJobTemplate("t", Fixtures.makeVJobs(Fixtures.VMS_PER_VJOB).get(0));
+    }
+
+    @Benchmark
+    public VJob instantiate() {
+        return template.instantiate("v", "root.");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public int instantiateMany() {
+        int nb = 0;
+        for (int i = 0; i < 1000; i++) {
+            nb += template.instantiate("v" + i, "r" + i + ".").getVirtualMachines().size();
+        }
+        return nb;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A journal of the relocations of running VMs in a configuration.
+ * Each move is recorded so a sequence of moves can be undone in O(moves)
+ * by rolling back to a savepoint. The free resources of the nodes are kept up to date.
+ *
+ * @author Fabien Hermenier
+ * @see ConfigurationAlterer#shuffle(AlterationJournal, ConstraintIndex, int, java.util.Random)
+ */
+public class AlterationJournal {
+
+    private Configuration cfg;
+
+    /**
+     * The view used to check the moves incrementally, shared by all the checks.
+     */
+    private ConfigurationView view;
+
+    private CapacityIndex capa;
+
+    private List<VirtualMachine> vms;
+
+    private List<Node> froms;
+
+    /**
+     * Make a new journal.
+     *
+     * @param cfg the configuration to alter
+     */
+    public AlterationJournal(Configuration cfg) {
+        this(cfg, new CapacityIndex(cfg));
+    }
+
+    /**
+     * Make a new journal.
+     *
+     * @param cfg  the configuration to alter
+     * @param capa the index of the free resources on the nodes of the configuration
+     */
+    public AlterationJournal(Configuration cfg, CapacityIndex capa) {
+        this.cfg = cfg;
+        this.view = new ConfigurationView(cfg);
+        this.capa = capa;
+        this.vms = new ArrayList<VirtualMachine>();
+        this.froms = new ArrayList<Node>();
+    }
+
+    /**
+     * Get the altered configuration.
+     *
+     * @return the configuration
+     */
+    public Configuration getConfiguration() {
+        return cfg;
+    }
+
+    /**
+     * Get a view of the altered configuration.
+     *
+     * @return the view, always the same
+     */
+    PlacementView getView() {
+        return view;
+    }
+
+    /**
+     * Get the index of the free resources on the nodes.
+     *
+     * @return the index
+     */
+    public CapacityIndex getCapacityIndex() {
+        return capa;
+    }
+
+    /**
+     * Move a running VM to another node.
+     *
+     * @param vm the VM to move
+     * @param to the new hosting node
+     * @return {@code true} if the VM has been moved. {@code false} if it is not running
+     */
+    public boolean move(VirtualMachine vm, Node to) {
+        if (!cfg.isRunning(vm)) {
+            return false;
+        }
+        Node from = cfg.getLocation(vm);
+        cfg.setRunOn(vm, to);
+        capa.moved(vm, from, to);
+        vms.add(vm);
+        froms.add(from);
+        return true;
+    }
+
+    /**
+     * Get a savepoint to roll back to.
+     *
+     * @return the savepoint
+     */
+    public int savepoint() {
+        return vms.size();
+    }
+
+    /**
+     * Undo the moves made since a savepoint, in the reverse order.
+     *
+     * @param sp the savepoint
+     */
+    public void rollback(int sp) {
+        if (sp < 0 || sp > vms.size()) {
+            throw new IllegalArgumentException("Unknown savepoint: " + sp);
+        }
+        for (int i = vms.size() - 1; i >= sp; i--) {
+            VirtualMachine vm = vms.remove(i);
+            Node from = froms.remove(i);
+            Node to = cfg.getLocation(vm);
+            cfg.setRunOn(vm, from);
+            capa.moved(vm, to, from);
+        }
+    }
+
+    /**
+     * Undo all the moves that have not been committed.
+     */
+    public void rollback() {
+        rollback(0);
+    }
+
+    /**
+     * Validate the moves. They cannot be undone anymore.
+     */
+    public void commit() {
+        vms.clear();
+        froms.clear();
+    }
+
+    /**
+     * Get the number of moves that have not been committed.
+     *
+     * @return a positive integer
+     */
+    public int size() {
+        return vms.size();
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.*;
+import entropy.vjob.DefaultVJob;
+import entropy.vjob.VJob;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A reader for the archives written by a {@link BinaryInstanceWriter}.
+ * Each instance is accessed directly through a memory-mapped view of its region of the archive
+ * so reading one instance does not depend on the size of the archive.
+ * The reader is thread-safe, several threads can read instances concurrently.
+ *
+ * @author Fabien Hermenier
+ */
+public class BinaryInstanceReader implements Closeable {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private RandomAccessFile file;
+
+    private FileChannel channel;
+
+    /**
+     * The offset of each instance, then the offset of the index.
+     */
+    private long[] offsets;
+
+    private boolean closed = false;
+
+    /**
+     * Open an archive.
+     *
+     * @param f the archive
+     * @throws IOException if the file cannot be opened or is not an archive
+     */
+    public BinaryInstanceReader(File f) throws IOException {
+        file = new RandomAccessFile(f, "r");
+        channel = file.getChannel();
+        long size = channel.size();
+        if (size < BinaryInstanceWriter.TRAILER_SIZE) {
+            throw new IOException("'" + f + "' is not an instance archive");
+        }
+        ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - BinaryInstanceWriter.TRAILER_SIZE, BinaryInstanceWriter.TRAILER_SIZE);
+        long indexOffset = trailer.getLong();
+        int nb = trailer.getInt();
+        if (trailer.getInt() != BinaryInstanceWriter.MAGIC) {
+            throw new IOException("'" + f + "' is not an instance archive");
+        }
+        ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, 8L * (nb + 1));
+        offsets = new long[nb + 1];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = index.getLong();
+        }
+    }
+
+    /**
+     * Get the number of instances in the archive.
+     *
+     * @return a positive number
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Read an instance.
+     *
+     * @param i the position of the instance in the archive
+     * @return the instance, with the index it was written with
+     * @throws IOException if an error occurred while reading
+     */
+    public Instance get(int i) throws IOException {
+        if (i < 0 || i >= size()) {
+            throw new IndexOutOfBoundsException("No instance " + i + " in an archive of " + size() + " instance(s)");
+        }
+        ByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, offsets[i], offsets[i + 1] - offsets[i]);
+        int index = b.getInt();
+
+        //The string table
+        String[] strings = new String[b.getInt()];
+        int[] ends = new int[strings.length];
+        for (int x = 0; x < ends.length; x++) {
+            ends[x] = b.getInt();
+        }
+        int start = 0;
+        for (int x = 0; x < strings.length; x++) {
+            byte[] buf = new byte[ends[x] - start];
+            b.get(buf);
+            strings[x] = new String(buf, UTF8);
+            start = ends[x];
+        }
+
+        Configuration cfg = new SimpleConfiguration();
+        Node[] nodes = new Node[b.getInt()];
+        for (int x = 0; x < nodes.length; x++) {
+            nodes[x] = new SimpleNode(strings[b.getInt()], b.getInt(), b.getInt(), b.getInt());
+            if (b.getInt() == BinaryInstanceWriter.ONLINE) {
+                cfg.addOnline(nodes[x]);
+            } else {
+                cfg.addOffline(nodes[x]);
+            }
+        }
+
+        VirtualMachine[] vms = new VirtualMachine[b.getInt()];
+        for (int x = 0; x < vms.length; x++) {
+            String name = strings[b.getInt()];
+            int nbCPUs = b.getInt();
+            int cpuConsumption = b.getInt();
+            int cpuDemand = b.getInt();
+            int cpuMax = b.getInt();
+            int memoryConsumption = b.getInt();
+            int memoryDemand = b.getInt();
+            int state = b.getInt();
+            int host = b.getInt();
+            VirtualMachine vm = new SimpleVirtualMachine(name, nbCPUs, cpuConsumption, memoryConsumption);
+            vm.setCPUDemand(cpuDemand);
+            vm.setCPUMax(cpuMax);
+            vm.setMemoryDemand(memoryDemand);
+            vms[x] = vm;
+            if (state == BinaryInstanceWriter.RUNNING) {
+                cfg.setRunOn(vm, nodes[host]);
+            } else if (state == BinaryInstanceWriter.SLEEPING) {
+                cfg.setSleepOn(vm, nodes[host]);
+            } else {
+                cfg.addWaiting(vm);
+            }
+        }
+
+        int nbVJobs = b.getInt();
+        List<VJob> vjobs = new ArrayList<VJob>(nbVJobs);
+        for (int x = 0; x < nbVJobs; x++) {
+            VJob v = new DefaultVJob(strings[b.getInt()]);
+            int nbVMs = b.getInt();
+            for (int y = 0; y < nbVMs; y++) {
+                v.addVirtualMachine(vms[b.getInt()]);
+            }
+            int nbConstraints = b.getInt();
+            for (int y = 0; y < nbConstraints; y++) {
+                String type = strings[b.getInt()];
+                ManagedElementSet<VirtualMachine> cVMs = new SimpleManagedElementSet<VirtualMachine>();
+                int nbCVMs = b.getInt();
+                for (int z = 0; z < nbCVMs; z++) {
+                    cVMs.add(vms[b.getInt()]);
+                }
+                ManagedElementSet<Node> cNodes = new SimpleManagedElementSet<Node>();
+                int nbCNodes = b.getInt();
+                for (int z = 0; z < nbCNodes; z++) {
+                    cNodes.add(nodes[b.getInt()]);
+                }
+                v.addConstraint(Constraints.make(type, cVMs, cNodes));
+            }
+            vjobs.add(v);
+        }
+        return new Instance(index, cfg, vjobs);
+    }
+
+    /**
+     * Close the archive.
+     * Closing an archive that is already closed has no effect.
+     *
+     * @throws IOException if an error occurred while closing
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        channel.close();
+        file.close();
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
+import entropy.vjob.PlacementConstraint;
+import entropy.vjob.VJob;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A writer for archives of instances in a compact binary format.
+ * The archives are read back using a {@link BinaryInstanceReader}.
+ * <p/>
+ * An archive is a sequence of instances followed by an index that gives the offset of each instance,
+ * then by a trailer. All the numbers are big-endian.
+ * <pre>
+ * archive  := instance* index trailer
+ * index    := offset[nbInstances + 1] (long)
+ * trailer  := indexOffset (long) nbInstances (int) MAGIC (int)
+ * instance := index (int) strings nbNodes (int) node* nbVMs (int) vm* nbVJobs (int) vjob*
+ * strings  := nbStrings (int) end[nbStrings] (int) bytes (UTF-8)
+ * node     := name nbCPUs cpuCapacity memoryCapacity state (5 ints)
+ * vm       := name nbCPUs cpuConsumption cpuDemand cpuMax memoryConsumption memoryDemand state host (9 ints)
+ * vjob     := id nbVMs (int) vm[nbVMs] (int) nbConstraints (int) constraint*
+ * constraint := type nbVMs (int) vm[nbVMs] (int) nbNodes (int) node[nbNodes] (int)
+ * </pre>
+ * The index of an instance is the index of its specification, {@code -1} if unknown.
+ * Names, ids and types are indexes in the string table of the instance. VMs and nodes are referred
+ * by their index in the instance. A single instance is limited to 2GB.
+ *
+ * @author Fabien Hermenier
+ */
+public class BinaryInstanceWriter implements GenerationListener, Closeable {
+
+    /**
+     * The magic number that ends an archive.
+     */
+    public static final int MAGIC = 0x52504d4b;
+
+    /**
+     * The size of the trailer in bytes.
+     */
+    public static final int TRAILER_SIZE = 16;
+
+    /**
+     * Node states.
+     */
+    static final int ONLINE = 0, OFFLINE = 1;
+
+    /**
+     * VM states.
+     */
+    static final int RUNNING = 0, SLEEPING = 1, WAITING = 2;
+
+    private DataOutputStream out;
+
+    private long position;
+
+    private List<Long> offsets;
+
+    private boolean closed = false;
+
+    /**
+     * Make a new writer.
+     *
+     * @param f the file of the archive. Overwritten if it exists
+     * @throws IOException if the file cannot be opened
+     */
+    public BinaryInstanceWriter(File f) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16));
+        offsets = new ArrayList<Long>();
+    }
+
+    private void writeInt(int v) throws IOException {
+        out.writeInt(v);
+        position += 4;
+    }
+
+    private void writeLong(long v) throws IOException {
+        out.writeLong(v);
+        position += 8;
+    }
+
+    /**
+     * Append an instance with no index to the archive.
+     *
+     * @param cfg   the configuration
+     * @param vjobs the vjobs
+     * @throws IOException              if an error occurred while writing
+     * @throws IllegalArgumentException if a vjob refers to an element out of the configuration
+     *                                  or uses an unsupported constraint. Nothing is written then
+     */
+    public void write(Configuration cfg, List<VJob> vjobs) throws IOException {
+        write(-1, cfg, vjobs);
+    }
+
+    /**
+     * Append an instance to the archive.
+     *
+     * @param index the index of the instance, {@code -1} if unknown
+     * @param cfg   the configuration
+     * @param vjobs the vjobs
+     * @throws IOException              if an error occurred while writing
+     * @throws IllegalArgumentException if a vjob refers to an element out of the configuration
+     *                                  or uses an unsupported constraint. Nothing is written then
+     */
+    public void write(int index, Configuration cfg, List<VJob> vjobs) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+        Map<Node, Integer> nodes = new HashMap<Node, Integer>();
+        Map<VirtualMachine, Integer> vms = new HashMap<VirtualMachine, Integer>();
+        for (Node n : cfg.getOnlines()) {
+            nodes.put(n, nodes.size());
+            string(strings, n.getName());
+        }
+        for (Node n : cfg.getOfflines()) {
+            nodes.put(n, nodes.size());
+            string(strings, n.getName());
+        }
+        for (Node n : cfg.getOnlines()) {
+            for (VirtualMachine vm : cfg.getRunnings(n)) {
+                vms.put(vm, vms.size());
+                string(strings, vm.getName());
+            }
+            for (VirtualMachine vm : cfg.getSleepings(n)) {
+                vms.put(vm, vms.size());
+                string(strings, vm.getName());
+            }
+        }
+        for (VirtualMachine vm : cfg.getWaitings()) {
+            vms.put(vm, vms.size());
+            string(strings, vm.getName());
+        }
+        //Nothing is written for an invalid instance
+        for (VJob v : vjobs) {
+            string(strings, v.id());
+            for (VirtualMachine vm : v.getVirtualMachines()) {
+                indexOf(vms, vm);
+            }
+            for (PlacementConstraint c : v.getConstraints()) {
+                String type = Constraints.getType(c);
+                if (type == null) {
+                    throw new IllegalArgumentException("Unsupported constraint type '" + c.getClass().getSimpleName() + "'");
+                }
+                string(strings, type);
+                for (VirtualMachine vm : c.getAllVirtualMachines()) {
+                    indexOf(vms, vm);
+                }
+                for (Node n : c.getNodes()) {
+                    indexOf(nodes, n);
+                }
+            }
+        }
+
+        offsets.add(position);
+        writeInt(index);
+
+        //The string table
+        writeInt(strings.size());
+        List<byte[]> bytes = new ArrayList<byte[]>(strings.size());
+        int end = 0;
+        for (String s : strings.keySet()) {
+            byte[] b = s.getBytes("UTF-8");
+            bytes.add(b);
+            end += b.length;
+            writeInt(end);
+        }
+        for (byte[] b : bytes) {
+            out.write(b);
+            position += b.length;
+        }
+
+        writeInt(nodes.size());
+        for (Node n : cfg.getOnlines()) {
+            writeNode(strings, n, ONLINE);
+        }
+        for (Node n : cfg.getOfflines()) {
+            writeNode(strings, n, OFFLINE);
+        }
+
+        writeInt(vms.size());
+        for (Node n : cfg.getOnlines()) {
+            for (VirtualMachine vm : cfg.getRunnings(n)) {
+                writeVM(strings, vm, RUNNING, nodes.get(n));
+            }
+            for (VirtualMachine vm : cfg.getSleepings(n)) {
+                writeVM(strings, vm, SLEEPING, nodes.get(n));
+            }
+        }
+        for (VirtualMachine vm : cfg.getWaitings()) {
+            writeVM(strings, vm, WAITING, -1);
+        }
+
+        writeInt(vjobs.size());
+        for (VJob v : vjobs) {
+            writeInt(strings.get(v.id()));
+            writeInt(v.getVirtualMachines().size());
+            for (VirtualMachine vm : v.getVirtualMachines()) {
+                writeInt(indexOf(vms, vm));
+            }
+            writeInt(v.getConstraints().size());
+            for (PlacementConstraint c : v.getConstraints()) {
+                writeInt(strings.get(Constraints.getType(c)));
+                writeInt(c.getAllVirtualMachines().size());
+                for (VirtualMachine vm : c.getAllVirtualMachines()) {
+                    writeInt(indexOf(vms, vm));
+                }
+                writeInt(c.getNodes().size());
+                for (Node n : c.getNodes()) {
+                    writeInt(indexOf(nodes, n));
+                }
+            }
+        }
+    }
+
+    private static void string(Map<String, Integer> strings, String s) {
+        if (!strings.containsKey(s)) {
+            strings.put(s, strings.size());
+        }
+    }
+
+    private static int indexOf(Map<VirtualMachine, Integer> vms, VirtualMachine vm) {
+        Integer i = vms.get(vm);
+        if (i == null) {
+            throw new IllegalArgumentException("VM '" + vm.getName() + "' is not in the configuration");
+        }
+        return i;
+    }
+
+    private static int indexOf(Map<Node, Integer> nodes, Node n) {
+        Integer i = nodes.get(n);
+        if (i == null) {
+            throw new IllegalArgumentException("Node '" + n.getName() + "' is not in the configuration");
+        }
+        return i;
+    }
+
+    private void writeNode(Map<String, Integer> strings, Node n, int state) throws IOException {
+        writeInt(strings.get(n.getName()));
+        writeInt(n.getNbOfCPUs());
+        writeInt(n.getCPUCapacity());
+        writeInt(n.getMemoryCapacity());
+        writeInt(state);
+    }
+
+    private void writeVM(Map<String, Integer> strings, VirtualMachine vm, int state, int host) throws IOException {
+        writeInt(strings.get(vm.getName()));
+        writeInt(vm.getNbOfCPUs());
+        writeInt(vm.getCPUConsumption());
+        writeInt(vm.getCPUDemand());
+        writeInt(vm.getCPUMax());
+        writeInt(vm.getMemoryConsumption());
+        writeInt(vm.getMemoryDemand());
+        writeInt(state);
+        writeInt(host);
+    }
+
+    /**
+     * Append an instance to the archive, with its index.
+     *
+     * @param i the instance
+     * @throws IOException if an error occurred while writing
+     */
+    public void write(Instance i) throws IOException {
+        write(i.getIndex(), i.getConfiguration(), i.getVJobs());
+    }
+
+    /**
+     * Append the configuration of a successful generation, with the index of its specification.
+     * The failed generations are ignored.
+     *
+     * @param res the result of the generation
+     * @throws IllegalStateException if an error occurred while writing
+     */
+    @Override
+    public void generated(GenerationResult res) {
+        if (res.isSuccessful()) {
+            try {
+                write(res.getIndex(), res.getConfiguration(), res.getSpec().getVJobs());
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to write instance " + res.getIndex(), e);
+            }
+        }
+    }
+
+    /**
+     * Write the index and the trailer, then close the archive.
+     * Closing an archive that is already closed has no effect.
+     *
+     * @throws IOException if an error occurred while writing
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        long indexOffset = position;
+        for (Long o : offsets) {
+            writeLong(o);
+        }
+        //The end of the last instance
+        writeLong(indexOffset);
+
+        writeLong(indexOffset);
+        writeInt(offsets.size());
+        writeInt(MAGIC);
+        out.close();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.ManagedElementSet;
+import entropy.configuration.VirtualMachine;
+
+/**
+ * The result of a generation with a time budget.
+ *
+ * @author Fabien Hermenier
+ * @see Generator#boundedGenerate(entropy.plan.Plan, entropy.configuration.ManagedElementSet, entropy.configuration.ManagedElementSet, java.util.List, long, java.util.concurrent.TimeUnit)
+ */
+public class BoundedResult {
+
+    /**
+     * The possible outcomes of the generation.
+     */
+    public static enum Status {
+        /**
+         * All the VMs are running, the constraints and the demand are satisfied.
+         */
+        feasible,
+        /**
+         * Some VMs are running without overloading their node, the others are waiting.
+         * The constraints that are not supported by {@link GreedyPlacement} may also be violated.
+         */
+        partial,
+        /**
+         * No VM could be placed.
+         */
+        failed
+    }
+
+    private Status status;
+
+    private Configuration cfg;
+
+    private ManagedElementSet<VirtualMachine> unplaced;
+
+    /**
+     * Make a new result.
+     *
+     * @param status   the outcome of the generation
+     * @param cfg      the configuration. {@code null} if the generation failed
+     * @param unplaced the VMs that are not running in the configuration
+     */
+    public BoundedResult(Status status, Configuration cfg, ManagedElementSet<VirtualMachine> unplaced) {
+        this.status = status;
+        this.cfg = cfg;
+        this.unplaced = unplaced;
+    }
+
+    /**
+     * Get the outcome of the generation.
+     *
+     * @return the status
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Get the generated configuration.
+     * For a partial result, the placed VMs are running while the others are waiting.
+     *
+     * @return the configuration. {@code null} if the generation failed
+     */
+    public Configuration getConfiguration() {
+        return cfg;
+    }
+
+    /**
+     * Get the VMs that should be running but are not.
+     *
+     * @return a set of VMs, empty for a feasible result
+     */
+    public ManagedElementSet<VirtualMachine> getUnplaced() {
+        return unplaced;
+    }
+
+    @Override
+    public String toString() {
+        return status + " (" + unplaced.size() + " unplaced VM(s))";
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.*;
+
+import java.util.*;
+
+/**
+ * An index of the free resources on the online nodes of a configuration.
+ * The free resources are computed from the consumption of the running VMs.
+ * The index must be notified about each VM that is moved to stay up to date.
+ *
+ * @author Fabien Hermenier
+ */
+public class CapacityIndex {
+
+    /**
+     * The free CPU and memory of each node.
+     */
+    private Map<Node, int[]> free;
+
+    /**
+     * The nodes, grouped by free CPU.
+     */
+    private TreeMap<Integer, Set<Node>> byFreeCPU;
+
+    /**
+     * Index the online nodes of a configuration.
+     *
+     * @param cfg the configuration to index
+     */
+    public CapacityIndex(Configuration cfg) {
+        index(new ConfigurationView(cfg));
+    }
+
+    /**
+     * Index the online nodes of a fork.
+     *
+     * @param f the fork to index
+     */
+    public CapacityIndex(ConfigurationFork f) {
+        index(f);
+    }
+
+    private void index(PlacementView v) {
+        ManagedElementSet<Node> onlines = v.getOnlines();
+        free = new HashMap<Node, int[]>(onlines.size());
+        byFreeCPU = new TreeMap<Integer, Set<Node>>();
+        for (Node n : onlines) {
+            index(n, v.getRunnings(n));
+        }
+    }
+
+    private void index(Node n, Iterable<VirtualMachine> runnings) {
+        int[] f = {n.getCPUCapacity(), n.getMemoryCapacity()};
+        for (VirtualMachine vm : runnings) {
+            f[0] -= vm.getCPUConsumption();
+            f[1] -= vm.getMemoryConsumption();
+        }
+        free.put(n, f);
+        bucket(f[0]).add(n);
+    }
+
+    private Set<Node> bucket(int cpu) {
+        Set<Node> s = byFreeCPU.get(cpu);
+        if (s == null) {
+            s = new LinkedHashSet<Node>();
+            byFreeCPU.put(cpu, s);
+        }
+        return s;
+    }
+
+    /**
+     * Get the nodes having enough free resources to host a VM.
+     *
+     * @param vm the VM to host
+     * @return a new set of nodes, may be empty
+     */
+    public ManagedElementSet<Node> getCandidates(VirtualMachine vm) {
+        ManagedElementSet<Node> candidates = new SimpleManagedElementSet<Node>();
+        for (Set<Node> ns : byFreeCPU.tailMap(vm.getCPUConsumption()).values()) {
+            for (Node n : ns) {
+                if (free.get(n)[1] >= vm.getMemoryConsumption()) {
+                    candidates.add(n);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Get the free CPU of an online node.
+     *
+     * @param n the node
+     * @return the free CPU capacity
+     */
+    public int getFreeCPU(Node n) {
+        return free.get(n)[0];
+    }
+
+    /**
+     * Get the free memory of an online node.
+     *
+     * @param n the node
+     * @return the free memory capacity
+     */
+    public int getFreeMemory(Node n) {
+        return free.get(n)[1];
+    }
+
+    /**
+     * Notify a VM has been moved.
+     *
+     * @param vm   the moved VM
+     * @param from the node that was hosting the VM. {@code null} if the VM was not running
+     * @param to   the node that is now hosting the VM. {@code null} if the VM is no longer running
+     */
+    public void moved(VirtualMachine vm, Node from, Node to) {
+        if (from != null) {
+            update(from, vm.getCPUConsumption(), vm.getMemoryConsumption());
+        }
+        if (to != null) {
+            update(to, -vm.getCPUConsumption(), -vm.getMemoryConsumption());
+        }
+    }
+
+    private void update(Node n, int cpu, int mem) {
+        int[] f = free.get(n);
+        if (f == null) {
+            return;
+        }
+        Set<Node> s = byFreeCPU.get(f[0]);
+        s.remove(n);
+        if (s.isEmpty()) {
+            byFreeCPU.remove(f[0]);
+        }
+        f[0] += cpu;
+        f[1] += mem;
+        bucket(f[0]).add(n);
+    }
+}
@@ -20,12 +20,15 @@
 package btrplace.rpMaker;
 
 import entropy.configuration.*;
+import entropy.vjob.Ban;
 import entropy.vjob.Fence;
-import entropy.vjob.Lonely;
+import entropy.vjob.Gather;
 import entropy.vjob.PlacementConstraint;
+import entropy.vjob.Spread;
 import entropy.vjob.VJob;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * Tools to alter a configuration and get some statistics.
@@ -34,6 +37,26 @@ import java.util.List;
  */
 public final class ConfigurationAlterer {
 
+    /**
+     * Default number of VMs in a batch of the parallel shuffle.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    /**
+     * Below this number of VMs, the candidates of a batch are evaluated sequentially.
+     */
+    private static final int PARALLEL_BATCH_THRESHOLD = 64;
+
+    /**
+     * The number of acceptable destinations retained for each VM of a batch.
+     */
+    private static final int NB_BATCH_CANDIDATES = 8;
+
+    /**
+     * The number of random nodes drawn for each VM of a batch before scanning all the candidates.
+     */
+    private static final int NB_BATCH_DRAWS = 4 * NB_BATCH_CANDIDATES;
+
     private ConfigurationAlterer() {
     }
 
@@ -47,18 +70,80 @@ public final class ConfigurationAlterer {
      * @return the set of virtual machines that was on the selected nodes (running or sleeping VMs)
      */
     public static ManagedElementSet<VirtualMachine> applyNodeFailureRatio(Configuration cfg, double ratio) {
-        int toFail = (int) (cfg.getOnlines().size() * ratio);
+        return failNodes(new ConfigurationView(cfg), ratio, Randoms.current());
+    }
+
+    /**
+     * Alter a configuration by putting a certain ratio of the online nodes offlines.
+     * Nodes are selected randomly.
+     *
+     * @param cfg   the configuration to alter
+     * @param ratio the ratio of nodes that have to be offline. Between 0.0 and 1.0
+     * @param rnd   the random source to select the nodes
+     * @return the set of virtual machines that was on the selected nodes (running or sleeping VMs)
+     */
+    public static ManagedElementSet<VirtualMachine> applyNodeFailureRatio(Configuration cfg, double ratio, Random rnd) {
+        return failNodes(new ConfigurationView(cfg), ratio, rnd);
+    }
+
+    /**
+     * Alter a configuration by putting a certain ratio of the online nodes offlines.
+     * Nodes are selected randomly. The load tracker is kept up to date.
+     *
+     * @param t     the tracker of the configuration to alter
+     * @param ratio the ratio of nodes that have to be offline. Between 0.0 and 1.0
+     * @return the set of virtual machines that was on the selected nodes (running or sleeping VMs)
+     */
+    public static ManagedElementSet<VirtualMachine> applyNodeFailureRatio(LoadTracker t, double ratio) {
+        return failNodes(t, ratio, Randoms.current());
+    }
+
+    /**
+     * Alter a configuration by putting a certain ratio of the online nodes offlines.
+     * Nodes are selected randomly. The load tracker is kept up to date.
+     *
+     * @param t     the tracker of the configuration to alter
+     * @param ratio the ratio of nodes that have to be offline. Between 0.0 and 1.0
+     * @param rnd   the random source to select the nodes
+     * @return the set of virtual machines that was on the selected nodes (running or sleeping VMs)
+     */
+    public static ManagedElementSet<VirtualMachine> applyNodeFailureRatio(LoadTracker t, double ratio, Random rnd) {
+        return failNodes(t, ratio, rnd);
+    }
+
+    /**
+     * Alter a fork of a configuration by putting a certain ratio of the online nodes offlines.
+     * Nodes are selected randomly. Only the fork stores the changes.
+     *
+     * @param f     the fork to alter
+     * @param ratio the ratio of nodes that have to be offline. Between 0.0 and 1.0
+     * @param rnd   the random source to select the nodes
+     * @return the set of virtual machines that was on the selected nodes (running or sleeping VMs)
+     */
+    public static ManagedElementSet<VirtualMachine> applyNodeFailureRatio(ConfigurationFork f, double ratio, Random rnd) {
+        return failNodes(f, ratio, rnd);
+    }
+
+    private static ManagedElementSet<VirtualMachine> failNodes(PlacementView v, double ratio, Random rnd) {
+        ManagedElementSet<Node> onlines = new SimpleManagedElementSet<Node>();
+        onlines.addAll(v.getOnlines());
+        int toFail = (int) (onlines.size() * ratio);
         ManagedElementSet<VirtualMachine> vms = new SimpleManagedElementSet<VirtualMachine>();
         while (toFail > 0) {
-            Node n = ManagedElementSets.randomNode(cfg.getOnlines());
+            Node n = Randoms.pick(onlines, rnd);
+            onlines.remove(n);
             ManagedElementSet<VirtualMachine> toRemove = new SimpleManagedElementSet<VirtualMachine>();
-            toRemove.addAll(cfg.getRunnings(n));
-            toRemove.addAll(cfg.getSleepings(n));
+            for (VirtualMachine vm : v.getRunnings(n)) {
+                toRemove.add(vm);
+            }
+            for (VirtualMachine vm : v.getSleepings(n)) {
+                toRemove.add(vm);
+            }
             vms.addAll(toRemove);
             for (VirtualMachine vm : toRemove) {
-                cfg.remove(vm);
+                v.remove(vm);
             }
-            boolean ret = cfg.addOffline(n);
+            boolean ret = v.addOffline(n);
             assert ret;
             toFail--;
         }
@@ -89,69 +174,515 @@ public final class ConfigurationAlterer {
      * @return {@code true} if the VM was relocated.
      */
     public static boolean relocate(Configuration cfg, VirtualMachine vm, List<VJob> vjobs, int tries) {
+        return relocate(cfg, vm, new ConstraintIndex(vjobs), tries);
+    }
+
+    /**
+     * Relocate a running VM to another node.
+     * The new location of the VM will satisfy all the placement constraints so the resource consumption.
+     *
+     * @param cfg   the configuration to alter
+     * @param vm    the virtual machine to relocate
+     * @param vjobs the vjobs
+     * @param tries the maximum number of tryout to find a node
+     * @param rnd   the random source to select the candidates
+     * @return {@code true} if the VM was relocated.
+     */
+    public static boolean relocate(Configuration cfg, VirtualMachine vm, List<VJob> vjobs, int tries, Random rnd) {
+        return relocate(cfg, vm, new ConstraintIndex(vjobs), new CapacityIndex(cfg), tries, rnd);
+    }
+
+    /**
+     * Relocate a running VM to another node.
+     * The new location of the VM will satisfy all the placement constraints so the resource consumption.
+     *
+     * @param cfg   the configuration to alter
+     * @param vm    the virtual machine to relocate
+     * @param idx   the index of the placement constraints to satisfy
+     * @param tries the maximum number of tryout to find a node
+     * @return {@code true} if the VM was relocated.
+     */
+    public static boolean relocate(Configuration cfg, VirtualMachine vm, ConstraintIndex idx, int tries) {
+        return relocate(cfg, vm, idx, new CapacityIndex(cfg), tries, Randoms.current());
+    }
+
+    /**
+     * Relocate a running VM to another node.
+     * The new location of the VM will satisfy all the placement constraints so the resource consumption.
+     * The candidate nodes are the nodes having enough free resources to host the VM
+     * that are allowed by its {@link Fence} and {@link Ban} constraints.
+     *
+     * @param cfg   the configuration to alter
+     * @param vm    the virtual machine to relocate
+     * @param idx   the index of the placement constraints to satisfy
+     * @param capa  the index of the free resources on the nodes. Updated if the VM is relocated
+     * @param tries the maximum number of tryout to find a node
+     * @param rnd   the random source to select the candidates
+     * @return {@code true} if the VM was relocated.
+     */
+    public static boolean relocate(Configuration cfg, VirtualMachine vm, ConstraintIndex idx, CapacityIndex capa, int tries, Random rnd) {
+        return relocate(new AlterationJournal(cfg, capa), vm, idx, tries, rnd);
+    }
+
+    /**
+     * Relocate a running VM to another node through a journal.
+     * The new location of the VM will satisfy all the placement constraints so the resource consumption.
+     * The candidate nodes are the nodes having enough free resources to host the VM
+     * that are allowed by its {@link Fence} and {@link Ban} constraints.
+     * When all the constraints that may be impacted are supported by the {@link DeltaChecker},
+     * the candidates are checked incrementally, assuming the configuration satisfies the constraints.
+     * Otherwise, the VM is tentatively moved and the moves are undone using the journal.
+     * Only the final move is kept in the journal.
+     *
+     * @param j     the journal of the configuration to alter
+     * @param vm    the virtual machine to relocate
+     * @param idx   the index of the placement constraints to satisfy
+     * @param tries the maximum number of tryout to find a node
+     * @param rnd   the random source to select the candidates
+     * @return {@code true} if the VM was relocated.
+     */
+    public static boolean relocate(AlterationJournal j, VirtualMachine vm, ConstraintIndex idx, int tries, Random rnd) {
+        Configuration cfg = j.getConfiguration();
         if (!cfg.isRunning(vm)) {
             return false;
         }
-        Node current = cfg.getLocation(vm);
-        ManagedElementSet<Node> candidates = cfg.getOnlines().clone();
-        boolean relocated = false;
-        while (!relocated && tries > 0) {
-            boolean fine = true;
-            if (candidates.isEmpty()) {
+        List<PlacementConstraint> cstrs = idx.getConstraints(vm);
+        ManagedElementSet<Node> candidates = getCandidates(vm, cfg.getLocation(vm), cstrs, j.getCapacityIndex());
+        DeltaChecker dc = idx.getDeltaChecker();
+        boolean delta = dc.isSupported(vm);
+        int sp = j.savepoint();
+        while (tries > 0 && !candidates.isEmpty()) {
+            Node n = Randoms.pick(candidates, rnd);
+            if (delta) {
+                if (dc.accept(j.getView(), vm, n)) {
+                    j.move(vm, n);
+                    return true;
+                }
+            } else {
+                j.move(vm, n);
+                if (isSatisfied(cfg, idx.getNodeScopedConstraints()) && isSatisfied(cfg, cstrs)) {
+                    return true;
+                }
+                j.rollback(sp);
+            }
+            tries--;
+            candidates.remove(n);
+        }
+        return false;
+    }
+
+    /**
+     * Relocate a running VM of a fork to another node.
+     * The new location of the VM will satisfy all the placement constraints so the resource consumption.
+     * When all the constraints that may be impacted are supported by the {@link DeltaChecker},
+     * the candidates are checked incrementally, assuming the fork satisfies the constraints.
+     * Otherwise, the fork is flattened into a standalone configuration, in O(size), to check
+     * the candidates using tentative moves, as with {@link #relocate(AlterationJournal, VirtualMachine, ConstraintIndex, int, Random)}.
+     *
+     * @param f     the fork to alter
+     * @param vm    the virtual machine to relocate
+     * @param idx   the index of the placement constraints to satisfy
+     * @param capa  the index of the free resources on the nodes of the fork. Updated if the VM is relocated
+     * @param tries the maximum number of tryout to find a node
+     * @param rnd   the random source to select the candidates
+     * @return {@code true} if the VM was relocated.
+     */
+    public static boolean relocate(ConfigurationFork f, VirtualMachine vm, ConstraintIndex idx, CapacityIndex capa, int tries, Random rnd) {
+        return relocate(f, null, vm, idx, capa, tries, rnd);
+    }
+
+    /**
+     * Relocate a running VM of a fork.
+     *
+     * @param f    the fork to alter
+     * @param flat the fork flattened into a configuration, kept in sync with the fork.
+     *             {@code null} to flatten the fork only if the move of the VM cannot be checked incrementally
+     * @return {@code true} if the VM was relocated.
+     */
+    private static boolean relocate(ConfigurationFork f, Configuration flat, VirtualMachine vm, ConstraintIndex idx, CapacityIndex capa, int tries, Random rnd) {
+        if (!f.isRunning(vm)) {
+            return false;
+        }
+        DeltaChecker dc = idx.getDeltaChecker();
+        boolean delta = dc.isSupported(vm);
+        if (!delta && flat == null) {
+            flat = f.toConfiguration();
+        }
+        Node current = f.getLocation(vm);
+        List<PlacementConstraint> cstrs = idx.getConstraints(vm);
+        ManagedElementSet<Node> candidates = getCandidates(vm, current, cstrs, capa);
+        while (tries > 0 && !candidates.isEmpty()) {
+            Node n = Randoms.pick(candidates, rnd);
+            boolean ok;
+            if (delta) {
+                ok = dc.accept(f, vm, n);
+            } else {
+                flat.setRunOn(vm, n);
+                ok = isSatisfied(flat, idx.getNodeScopedConstraints()) && isSatisfied(flat, cstrs);
+                flat.setRunOn(vm, current);
+            }
+            if (ok) {
+                f.setRunOn(vm, n);
+                if (flat != null) {
+                    flat.setRunOn(vm, n);
+                }
+                capa.moved(vm, current, n);
+                return true;
+            }
+            tries--;
+            candidates.remove(n);
+        }
+        return false;
+    }
+
+    /**
+     * Get the nodes with enough free resources to host a VM that are allowed by
+     * its {@link Fence} and {@link Ban} constraints.
+     *
+     * @param vm      the VM to relocate
+     * @param current the node currently hosting the VM
+     * @param cstrs   the constraints involving the VM
+     * @param capa    the index of the free resources on the nodes
+     * @return a new set of nodes, without the current one
+     */
+    private static ManagedElementSet<Node> getCandidates(VirtualMachine vm, Node current, List<PlacementConstraint> cstrs, CapacityIndex capa) {
+        ManagedElementSet<Node> candidates = capa.getCandidates(vm);
+        candidates.remove(current);
+        for (PlacementConstraint c : cstrs) {
+            if (c instanceof Fence) {
+                candidates.retainAll(c.getNodes());
+            } else if (c instanceof Ban) {
+                candidates.removeAll(c.getNodes());
+            }
+        }
+        return candidates;
+    }
+
+    private static boolean isSatisfied(Configuration cfg, List<PlacementConstraint> cstrs) {
+        for (PlacementConstraint c : cstrs) {
+            if (!c.isSatisfied(cfg)) {
                 return false;
             }
-            Node n = ManagedElementSets.randomNode(candidates);
-            if (n.equals(current)) {
-                tries--;
-                continue;
+        }
+        return true;
+    }
+
+    /**
+     * Relocate random running VMs.
+     *
+     * @param cfg     the configuration to alter
+     * @param vjobs   the vjobs
+     * @param nbMoves the number of relocations to try
+     */
+    public static void shuffle(Configuration cfg, List<VJob> vjobs, int nbMoves) {
+        shuffle(cfg, new ConstraintIndex(vjobs), nbMoves, Randoms.current());
+    }
+
+    /**
+     * Relocate random running VMs.
+     *
+     * @param cfg     the configuration to alter
+     * @param vjobs   the vjobs
+     * @param nbMoves the number of relocations to try
+     * @param rnd     the random source to select the VMs and their new location
+     */
+    public static void shuffle(Configuration cfg, List<VJob> vjobs, int nbMoves, Random rnd) {
+        shuffle(cfg, new ConstraintIndex(vjobs), nbMoves, rnd);
+    }
+
+    /**
+     * Relocate random running VMs.
+     *
+     * @param cfg     the configuration to alter
+     * @param idx     the index of the placement constraints to satisfy
+     * @param nbMoves the number of relocations to try
+     * @param rnd     the random source to select the VMs and their new location
+     */
+    public static void shuffle(Configuration cfg, ConstraintIndex idx, int nbMoves, Random rnd) {
+        shuffle(new AlterationJournal(cfg), idx, nbMoves, rnd, true);
+    }
+
+    /**
+     * Relocate random running VMs through a journal.
+     * The whole shuffle can then be undone by rolling back the journal.
+     *
+     * @param j       the journal of the configuration to alter
+     * @param idx     the index of the placement constraints to satisfy
+     * @param nbMoves the number of relocations to try
+     * @param rnd     the random source to select the VMs and their new location
+     */
+    public static void shuffle(AlterationJournal j, ConstraintIndex idx, int nbMoves, Random rnd) {
+        shuffle(j, idx, nbMoves, rnd, false);
+    }
+
+    /**
+     * Relocate random running VMs through a journal.
+     *
+     * @param j          the journal of the configuration to alter
+     * @param idx        the index of the placement constraints to satisfy
+     * @param nbMoves    the number of relocations to try
+     * @param rnd        the random source to select the VMs and their new location
+     * @param autoCommit {@code true} to commit each relocation so the journal does not grow
+     */
+    private static void shuffle(AlterationJournal j, ConstraintIndex idx, int nbMoves, Random rnd, boolean autoCommit) {
+        Configuration cfg = j.getConfiguration();
+        ManagedElementSet<VirtualMachine> vms = cfg.getAllVirtualMachines();
+        int nbNodes = cfg.getOnlines().size();
+        for (int x = 0; x < nbMoves && !vms.isEmpty(); x++) {
+            VirtualMachine vm = Randoms.pick(vms, rnd);
+            relocate(j, vm, idx, nbNodes, rnd);
+            if (autoCommit) {
+                j.commit();
+            }
+        }
+    }
+
+    /**
+     * Relocate random running VMs of a fork.
+     * Only the fork stores the moves, so the shuffle is undone by discarding it.
+     *
+     * @param f       the fork to alter
+     * @param idx     the index of the placement constraints to satisfy
+     * @param nbMoves the number of relocations to try
+     * @param rnd     the random source to select the VMs and their new location
+     * @see #relocate(ConfigurationFork, VirtualMachine, ConstraintIndex, CapacityIndex, int, Random)
+     */
+    public static void shuffle(ConfigurationFork f, ConstraintIndex idx, int nbMoves, Random rnd) {
+        ManagedElementSet<VirtualMachine> vms = f.getAllVirtualMachines();
+        CapacityIndex capa = new CapacityIndex(f);
+        DeltaChecker dc = idx.getDeltaChecker();
+        int nbNodes = f.getOnlines().size();
+        //Flattened once, on the first move that cannot be checked incrementally
+        Configuration flat = null;
+        for (int x = 0; x < nbMoves && !vms.isEmpty(); x++) {
+            VirtualMachine vm = Randoms.pick(vms, rnd);
+            if (flat == null && !dc.isSupported(vm)) {
+                flat = f.toConfiguration();
             }
-            cfg.setRunOn(vm, n);
-            //Check the constraints
-            if (Configurations.currentlyOverloaded(cfg, n)) {
-                fine = false;
-            } else {
-                for (VJob v : vjobs) {
-                    for (PlacementConstraint c : v.getConstraints()) {
-                        //TODO: use c.getAllVirtualMachines().contains(vm) is good in theory
-                        //to avoid useless check. But some constraints like Lonely may not be compatible with this tweak.
-                        //idem. with constraints focused on nodes
-                        if (!(c instanceof Lonely) && c.getAllVirtualMachines().contains(vm) && !c.isSatisfied(cfg)) {
-                            fine = false;
-                            break;
-                        } else if (c instanceof Lonely && !c.isSatisfied(cfg)) {
-                            fine = false;
-                            break;
-                        }
-                        if (c.getAllVirtualMachines().contains(vm) && c instanceof Fence) {
-                            //There must be a better solution to handle partitioning constraints that are simple domain
-                            // resriction
-                            candidates.retainAll(c.getNodes());
-                        }
+            relocate(f, flat, vm, idx, capa, nbNodes, rnd);
+        }
+    }
+
+    /**
+     * Relocate random running VMs using batches of moves evaluated in parallel.
+     *
+     * @param cfg     the configuration to alter
+     * @param vjobs   the vjobs
+     * @param nbMoves the number of relocations to try
+     * @param rnd     the random source to select the VMs and their new location
+     * @see #parallelShuffle(AlterationJournal, ConstraintIndex, int, int, Random)
+     */
+    public static void parallelShuffle(Configuration cfg, List<VJob> vjobs, int nbMoves, Random rnd) {
+        parallelShuffle(new AlterationJournal(cfg), new ConstraintIndex(vjobs), nbMoves, DEFAULT_BATCH_SIZE, rnd, true);
+    }
+
+    /**
+     * Relocate random running VMs using batches of moves evaluated in parallel.
+     * A batch is made of VMs whose moves cannot interfere: they have distinct hosting nodes,
+     * do not share any {@link Spread} or {@link Gather} constraint, and their constraints can be checked using a {@link DeltaChecker}.
+     * A bounded number of candidate nodes of each VM are evaluated in parallel against the configuration
+     * before the batch. The moves are then committed in the order the VMs were selected,
+     * each VM going to its first candidate that is neither a source nor a destination of another move.
+     * A VM whose candidates are all taken stays in place.
+     * The VMs that cannot be part of a batch are relocated sequentially after it.
+     * <p/>
+     * Each VM of a batch has its own random source, derived from {@code rnd} when it is selected,
+     * so the result only depends on {@code rnd}, whatever the number of workers.
+     *
+     * @param j         the journal of the configuration to alter
+     * @param idx       the index of the placement constraints to satisfy
+     * @param nbMoves   the number of relocations to try
+     * @param batchSize the maximum number of VMs in a batch
+     * @param rnd       the random source to select the VMs and their new location
+     */
+    public static void parallelShuffle(AlterationJournal j, ConstraintIndex idx, int nbMoves, int batchSize, Random rnd) {
+        parallelShuffle(j, idx, nbMoves, batchSize, rnd, false);
+    }
+
+    /**
+     * Relocate random running VMs using batches of moves evaluated in parallel.
+     *
+     * @param j          the journal of the configuration to alter
+     * @param idx        the index of the placement constraints to satisfy
+     * @param nbMoves    the number of relocations to try
+     * @param batchSize  the maximum number of VMs in a batch
+     * @param rnd        the random source to select the VMs and their new location
+     * @param autoCommit {@code true} to commit each batch so the journal does not grow
+     */
+    private static void parallelShuffle(AlterationJournal j, ConstraintIndex idx, int nbMoves, int batchSize, Random rnd, boolean autoCommit) {
+        Configuration cfg = j.getConfiguration();
+        ManagedElementSet<VirtualMachine> vms = cfg.getAllVirtualMachines();
+        if (vms.isEmpty()) {
+            return;
+        }
+        DeltaChecker dc = idx.getDeltaChecker();
+        List<Node> onlines = new ArrayList<Node>(cfg.getOnlines());
+        int nbNodes = onlines.size();
+        int done = 0;
+        while (done < nbMoves) {
+            //Select the batch
+            List<VirtualMachine> batch = new ArrayList<VirtualMachine>();
+            List<Random> rnds = new ArrayList<Random>();
+            List<VirtualMachine> sequential = new ArrayList<VirtualMachine>();
+            Set<Node> sources = new HashSet<Node>();
+            Set<PlacementConstraint> used = new HashSet<PlacementConstraint>();
+            for (int draws = 0; done < nbMoves && batch.size() < batchSize && draws < 2 * batchSize; draws++) {
+                VirtualMachine vm = Randoms.pick(vms, rnd);
+                if (!cfg.isRunning(vm)) {
+                    done++;
+                    continue;
+                }
+                if (!dc.isSupported(vm)) {
+                    sequential.add(vm);
+                    done++;
+                    continue;
+                }
+                //Fence, Ban and Lonely only depend on the destination, that are distinct inside a batch
+                List<PlacementConstraint> cstrs = new ArrayList<PlacementConstraint>();
+                for (PlacementConstraint c : idx.getConstraints(vm)) {
+                    if (c instanceof Spread || c instanceof Gather) {
+                        cstrs.add(c);
                     }
-                    if (!fine) {
+                }
+                if (sources.contains(cfg.getLocation(vm)) || !Collections.disjoint(used, cstrs)) {
+                    //Conflicting, may be part of another batch
+                    continue;
+                }
+                sources.add(cfg.getLocation(vm));
+                used.addAll(cstrs);
+                batch.add(vm);
+                rnds.add(Randoms.split(rnd));
+                done++;
+            }
+
+            //Evaluate the candidates against the configuration before the batch
+            List<List<Node>> candidates;
+            if (batch.size() < PARALLEL_BATCH_THRESHOLD) {
+                candidates = new Candidates(j, idx, onlines, batch, rnds, sources, 0, batch.size()).call();
+            } else {
+                candidates = evaluate(j, idx, onlines, batch, rnds, sources);
+            }
+
+            //Commit
+            Set<Node> targets = new HashSet<Node>();
+            for (int i = 0; i < batch.size(); i++) {
+                for (Node n : candidates.get(i)) {
+                    if (targets.add(n)) {
+                        j.move(batch.get(i), n);
                         break;
                     }
                 }
             }
-            if (!fine) {
-                tries--;
-                candidates.remove(n);
-            } else {
-                relocated = true;
+
+            for (VirtualMachine vm : sequential) {
+                relocate(j, vm, idx, nbNodes, rnd);
             }
+            if (autoCommit) {
+                j.commit();
+            }
+        }
+    }
+
+    private static List<List<Node>> evaluate(AlterationJournal j, ConstraintIndex idx, List<Node> onlines,
+                                             List<VirtualMachine> batch, List<Random> rnds, Set<Node> sources) {
+        int nbChunks = Workers.defaultSize();
+        int size = Math.max(1, (batch.size() + nbChunks - 1) / nbChunks);
+        List<Candidates> tasks = new ArrayList<Candidates>();
+        for (int from = 0; from < batch.size(); from += size) {
+            tasks.add(new Candidates(j, idx, onlines, batch, rnds, sources, from, Math.min(batch.size(), from + size)));
         }
-        //Reset the position in case of failure
-        if (!relocated) {
-            cfg.setRunOn(vm, current);
+        List<List<Node>> res = new ArrayList<List<Node>>(batch.size());
+        for (List<List<Node>> chunk : Workers.invokeAll(tasks)) {
+            res.addAll(chunk);
         }
-        return relocated;
+        return res;
     }
 
-    public static void shuffle(Configuration cfg, List<VJob> vjobs, int nbMoves) {
-        for (int j = 0; j < nbMoves; j++) {
-            VirtualMachine vm = ManagedElementSets.randomVirtualMachine(cfg.getAllVirtualMachines());
-            ConfigurationAlterer.relocate(cfg, vm, vjobs);
+    /**
+     * Compute some acceptable destinations of a range of VMs in a batch, in a random order.
+     * For each VM, random online nodes are drawn until {@link #NB_BATCH_CANDIDATES} destinations
+     * are accepted or {@link #NB_BATCH_DRAWS} nodes are drawn, so the cost does not depend on the
+     * number of nodes. When no node was accepted, as for a VM fenced on a few nodes, all the nodes
+     * having enough free resources are checked.
+     * The configuration and the capacity index are only read.
+     */
+    private static final class Candidates implements Callable<List<List<Node>>> {
+
+        private AlterationJournal j;
+
+        private ConstraintIndex idx;
+
+        private List<Node> onlines;
+
+        private List<VirtualMachine> batch;
+
+        private List<Random> rnds;
+
+        private Set<Node> sources;
+
+        private int from;
+
+        private int to;
+
+        private Candidates(AlterationJournal j, ConstraintIndex idx, List<Node> onlines, List<VirtualMachine> batch, List<Random> rnds, Set<Node> sources, int from, int to) {
+            this.j = j;
+            this.idx = idx;
+            this.onlines = onlines;
+            this.batch = batch;
+            this.rnds = rnds;
+            this.sources = sources;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public List<List<Node>> call() {
+            PlacementView v = j.getView();
+            CapacityIndex capa = j.getCapacityIndex();
+            DeltaChecker dc = idx.getDeltaChecker();
+            List<List<Node>> res = new ArrayList<List<Node>>(to - from);
+            for (int i = from; i < to; i++) {
+                VirtualMachine vm = batch.get(i);
+                Random rnd = rnds.get(i);
+                List<Node> ok = new ArrayList<Node>(NB_BATCH_CANDIDATES);
+                for (int d = 0; d < NB_BATCH_DRAWS && ok.size() < NB_BATCH_CANDIDATES; d++) {
+                    Node n = onlines.get(rnd.nextInt(onlines.size()));
+                    if (capa.getFreeCPU(n) >= vm.getCPUConsumption()
+                            && capa.getFreeMemory(n) >= vm.getMemoryConsumption()
+                            && isAcceptable(v, dc, vm, n) && !ok.contains(n)) {
+                        ok.add(n);
+                    }
+                }
+                if (ok.isEmpty()) {
+                    for (Node n : capa.getCandidates(vm)) {
+                        if (isAcceptable(v, dc, vm, n)) {
+                            ok.add(n);
+                            if (ok.size() == NB_BATCH_CANDIDATES) {
+                                break;
+                            }
+                        }
+                    }
+                    Collections.shuffle(ok, rnd);
+                }
+                res.add(ok);
+            }
+            return res;
         }
+
+        private boolean isAcceptable(PlacementView v, DeltaChecker dc, VirtualMachine vm, Node n) {
+            return !sources.contains(n) && dc.accept(v, vm, n);
+        }
+    }
+
+    /**
+     * Compute the load statistics of a configuration in a single pass.
+     * Large configurations are analysed in parallel.
+     *
+     * @param cfg the configuration to analyse
+     * @return the statistics
+     */
+    public static LoadReport getLoadReport(Configuration cfg) {
+        return new LoadReport(cfg);
     }
 
     public static double getCPUConsumptionLoad(Configuration cfg) {
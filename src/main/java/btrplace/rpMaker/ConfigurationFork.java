@@ -0,0 +1,554 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.*;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A copy-on-write branch of a configuration.
+ * A fork only stores the changes made since its parent: the state and the location of
+ * the altered VMs and the state of the altered nodes. Forking is then in O(1) and the memory
+ * usage of a fork is in O(changes), whatever the size of the base configuration.
+ * <p/>
+ * A fork freezes its parent: a configuration with children cannot be altered anymore, so the
+ * children always see the state they were forked from. The base configuration must not be altered
+ * while forks are in use. The state of an element is looked up along the chain of forks, so it
+ * costs O(depth). A frozen fork materialises its sets of elements on their first use, so a set query
+ * only costs the size of the set plus the changes of the fork. A frozen fork can be queried by
+ * several threads at once. {@link #toConfiguration()} flattens a fork into a standalone configuration.
+ *
+ * @author Fabien Hermenier
+ */
+public class ConfigurationFork implements PlacementView {
+
+    private static final byte RUNNING = 0;
+
+    private static final byte SLEEPING = 1;
+
+    private static final byte WAITING = 2;
+
+    private static final byte REMOVED = 3;
+
+    private Configuration base;
+
+    private ConfigurationFork parent;
+
+    private Map<VirtualMachine, Placement> vms;
+
+    private Map<Node, Boolean> nodes;
+
+    /**
+     * For each node, the VMs that have been placed on it by this fork.
+     */
+    private Map<Node, Set<VirtualMachine>> hosted;
+
+    private volatile boolean frozen;
+
+    /**
+     * The materialised sets, once frozen. {@code null} until computed.
+     */
+    private volatile Set<Node> onlines, offlines;
+
+    private volatile Set<VirtualMachine> waitings;
+
+    private Map<Node, Set<VirtualMachine>> runnings, sleepings;
+
+    /**
+     * Make a fork of a configuration.
+     *
+     * @param base the base configuration. It must not be altered while the fork is in use
+     */
+    public ConfigurationFork(Configuration base) {
+        this(base, null);
+    }
+
+    private ConfigurationFork(Configuration base, ConfigurationFork parent) {
+        this.base = base;
+        this.parent = parent;
+        this.vms = new HashMap<VirtualMachine, Placement>();
+        this.nodes = new HashMap<Node, Boolean>();
+        this.hosted = new HashMap<Node, Set<VirtualMachine>>();
+        this.runnings = new ConcurrentHashMap<Node, Set<VirtualMachine>>();
+        this.sleepings = new ConcurrentHashMap<Node, Set<VirtualMachine>>();
+    }
+
+    /**
+     * Fork this configuration.
+     * This configuration cannot be altered anymore.
+     *
+     * @return a new child configuration
+     */
+    public ConfigurationFork fork() {
+        frozen = true;
+        return new ConfigurationFork(base, this);
+    }
+
+    /**
+     * Get the parent configuration.
+     *
+     * @return the parent. {@code null} for a fork of the base configuration
+     */
+    public ConfigurationFork getParent() {
+        return parent;
+    }
+
+    /**
+     * Get the number of changes stored in this fork.
+     *
+     * @return the number of altered VMs and nodes since the parent
+     */
+    public int getNbChanges() {
+        return vms.size() + nodes.size();
+    }
+
+    /**
+     * Indicate whether this configuration can be altered.
+     *
+     * @return {@code true} iff it has not been forked
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Set a VM running on an online node.
+     *
+     * @param vm the VM
+     * @param n  the hosting node
+     * @return {@code true} if the VM is now running on the node. {@code false} if the node is not online
+     */
+    @Override
+    public boolean setRunOn(VirtualMachine vm, Node n) {
+        return place(vm, RUNNING, n);
+    }
+
+    /**
+     * Set a VM sleeping on an online node.
+     *
+     * @param vm the VM
+     * @param n  the hosting node
+     * @return {@code true} if the VM is now sleeping on the node. {@code false} if the node is not online
+     */
+    public boolean setSleepOn(VirtualMachine vm, Node n) {
+        return place(vm, SLEEPING, n);
+    }
+
+    /**
+     * Set a VM waiting.
+     *
+     * @param vm the VM
+     */
+    public void addWaiting(VirtualMachine vm) {
+        place(vm, WAITING, null);
+    }
+
+    /**
+     * Remove a VM from the configuration.
+     *
+     * @param vm the VM to remove
+     * @return {@code true} if the VM was in the configuration
+     */
+    @Override
+    public boolean remove(VirtualMachine vm) {
+        if (!contains(vm)) {
+            return false;
+        }
+        place(vm, REMOVED, null);
+        return true;
+    }
+
+    /**
+     * Set a node online.
+     *
+     * @param n the node
+     */
+    public void addOnline(Node n) {
+        checkMutable();
+        nodes.put(n, Boolean.TRUE);
+    }
+
+    /**
+     * Set a node offline.
+     *
+     * @param n the node
+     * @return {@code true} if the node is now offline. {@code false} if it still hosts VMs
+     */
+    @Override
+    public boolean addOffline(Node n) {
+        checkMutable();
+        if (isOnline(n) && (!hostedSet(n, RUNNING).isEmpty() || !hostedSet(n, SLEEPING).isEmpty())) {
+            return false;
+        }
+        nodes.put(n, Boolean.FALSE);
+        return true;
+    }
+
+    /**
+     * Check if a VM is in the configuration.
+     *
+     * @param vm the VM
+     * @return {@code true} iff the VM is running, sleeping or waiting
+     */
+    public boolean contains(VirtualMachine vm) {
+        Placement p = lookup(vm);
+        return p != null && p.state != REMOVED;
+    }
+
+    /**
+     * Check if a VM is running.
+     *
+     * @param vm the VM
+     * @return {@code true} iff the VM is running
+     */
+    @Override
+    public boolean isRunning(VirtualMachine vm) {
+        return is(vm, RUNNING);
+    }
+
+    /**
+     * Check if a VM is sleeping.
+     *
+     * @param vm the VM
+     * @return {@code true} iff the VM is sleeping
+     */
+    public boolean isSleeping(VirtualMachine vm) {
+        return is(vm, SLEEPING);
+    }
+
+    /**
+     * Check if a VM is waiting.
+     *
+     * @param vm the VM
+     * @return {@code true} iff the VM is waiting
+     */
+    public boolean isWaiting(VirtualMachine vm) {
+        return is(vm, WAITING);
+    }
+
+    /**
+     * Get the node hosting a VM.
+     *
+     * @param vm the VM
+     * @return the node. {@code null} if the VM is neither running nor sleeping
+     */
+    @Override
+    public Node getLocation(VirtualMachine vm) {
+        Placement p = lookup(vm);
+        return p == null ? null : p.host;
+    }
+
+    /**
+     * Check if a node is online.
+     *
+     * @param n the node
+     * @return {@code true} iff the node is online
+     */
+    public boolean isOnline(Node n) {
+        return Boolean.TRUE.equals(stateOf(n));
+    }
+
+    /**
+     * Check if a node is offline.
+     *
+     * @param n the node
+     * @return {@code true} iff the node is offline
+     */
+    public boolean isOffline(Node n) {
+        return Boolean.FALSE.equals(stateOf(n));
+    }
+
+    /**
+     * Get the online nodes.
+     *
+     * @return a new set of nodes
+     */
+    @Override
+    public ManagedElementSet<Node> getOnlines() {
+        return toSet(nodeSet(true));
+    }
+
+    /**
+     * Get the offline nodes.
+     *
+     * @return a new set of nodes
+     */
+    public ManagedElementSet<Node> getOfflines() {
+        return toSet(nodeSet(false));
+    }
+
+    /**
+     * Get the VMs running on a node.
+     *
+     * @param n the node
+     * @return a new set of VMs
+     */
+    @Override
+    public ManagedElementSet<VirtualMachine> getRunnings(Node n) {
+        return toSet(hostedSet(n, RUNNING));
+    }
+
+    /**
+     * Get the VMs sleeping on a node.
+     *
+     * @param n the node
+     * @return a new set of VMs
+     */
+    @Override
+    public ManagedElementSet<VirtualMachine> getSleepings(Node n) {
+        return toSet(hostedSet(n, SLEEPING));
+    }
+
+    /**
+     * Get the waiting VMs.
+     *
+     * @return a new set of VMs
+     */
+    public ManagedElementSet<VirtualMachine> getWaitings() {
+        return toSet(waitingSet());
+    }
+
+    /**
+     * Get all the VMs: the running, the sleeping and the waiting ones.
+     *
+     * @return a new set of VMs
+     */
+    public ManagedElementSet<VirtualMachine> getAllVirtualMachines() {
+        ManagedElementSet<VirtualMachine> res = new SimpleManagedElementSet<VirtualMachine>();
+        for (Node n : nodeSet(true)) {
+            res.addAll(hostedSet(n, RUNNING));
+            res.addAll(hostedSet(n, SLEEPING));
+        }
+        res.addAll(waitingSet());
+        return res;
+    }
+
+    /**
+     * Flatten the fork into a standalone configuration.
+     *
+     * @return a new configuration
+     */
+    public Configuration toConfiguration() {
+        Configuration cfg = new SimpleConfiguration();
+        for (Node n : nodeSet(true)) {
+            cfg.addOnline(n);
+            for (VirtualMachine vm : hostedSet(n, RUNNING)) {
+                cfg.setRunOn(vm, n);
+            }
+            for (VirtualMachine vm : hostedSet(n, SLEEPING)) {
+                cfg.setSleepOn(vm, n);
+            }
+        }
+        for (Node n : nodeSet(false)) {
+            cfg.addOffline(n);
+        }
+        for (VirtualMachine vm : waitingSet()) {
+            cfg.addWaiting(vm);
+        }
+        return cfg;
+    }
+
+    private void checkMutable() {
+        if (frozen) {
+            throw new IllegalStateException("The configuration has been forked and cannot be altered anymore");
+        }
+    }
+
+    private boolean place(VirtualMachine vm, byte state, Node n) {
+        checkMutable();
+        if (n != null && !isOnline(n)) {
+            return false;
+        }
+        Placement prev = vms.put(vm, new Placement(state, n));
+        if (prev != null && prev.host != null) {
+            hosted.get(prev.host).remove(vm);
+        }
+        if (n != null) {
+            Set<VirtualMachine> s = hosted.get(n);
+            if (s == null) {
+                s = new HashSet<VirtualMachine>();
+                hosted.put(n, s);
+            }
+            s.add(vm);
+        }
+        return true;
+    }
+
+    private boolean is(VirtualMachine vm, byte state) {
+        Placement p = lookup(vm);
+        return p != null && p.state == state;
+    }
+
+    private Placement lookup(VirtualMachine vm) {
+        for (ConfigurationFork f = this; f != null; f = f.parent) {
+            Placement p = f.vms.get(vm);
+            if (p != null) {
+                return p;
+            }
+        }
+        if (base.isRunning(vm)) {
+            return new Placement(RUNNING, base.getLocation(vm));
+        } else if (base.isSleeping(vm)) {
+            return new Placement(SLEEPING, base.getLocation(vm));
+        } else if (base.isWaiting(vm)) {
+            return new Placement(WAITING, null);
+        }
+        return null;
+    }
+
+    private Boolean stateOf(Node n) {
+        for (ConfigurationFork f = this; f != null; f = f.parent) {
+            Boolean b = f.nodes.get(n);
+            if (b != null) {
+                return b;
+            }
+        }
+        if (base.isOnline(n)) {
+            return Boolean.TRUE;
+        } else if (base.isOffline(n)) {
+            return Boolean.FALSE;
+        }
+        return null;
+    }
+
+    /**
+     * Get the nodes in a given state.
+     * The set is made from the one of the parent, updated with the changes of this fork.
+     *
+     * @param online {@code true} for the online nodes, {@code false} for the offline ones
+     * @return a set that must not be modified
+     */
+    private Set<Node> nodeSet(boolean online) {
+        Set<Node> res = online ? onlines : offlines;
+        if (res != null) {
+            return res;
+        }
+        if (parent != null) {
+            res = new LinkedHashSet<Node>(parent.nodeSet(online));
+        } else {
+            res = new LinkedHashSet<Node>(online ? base.getOnlines() : base.getOfflines());
+        }
+        for (Map.Entry<Node, Boolean> e : nodes.entrySet()) {
+            if (e.getValue() == online) {
+                res.add(e.getKey());
+            } else {
+                res.remove(e.getKey());
+            }
+        }
+        if (frozen) {
+            if (online) {
+                onlines = res;
+            } else {
+                offlines = res;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Get the waiting VMs.
+     *
+     * @return a set that must not be modified
+     */
+    private Set<VirtualMachine> waitingSet() {
+        Set<VirtualMachine> res = waitings;
+        if (res != null) {
+            return res;
+        }
+        res = new LinkedHashSet<VirtualMachine>(parent != null ? parent.waitingSet() : base.getWaitings());
+        for (Map.Entry<VirtualMachine, Placement> e : vms.entrySet()) {
+            if (e.getValue().state == WAITING) {
+                res.add(e.getKey());
+            } else {
+                res.remove(e.getKey());
+            }
+        }
+        if (frozen) {
+            waitings = res;
+        }
+        return res;
+    }
+
+    /**
+     * Get the VMs hosted by a node in a given state.
+     *
+     * @param n     the node
+     * @param state {@link #RUNNING} or {@link #SLEEPING}
+     * @return a set that must not be modified
+     */
+    private Set<VirtualMachine> hostedSet(Node n, byte state) {
+        Map<Node, Set<VirtualMachine>> cache = state == RUNNING ? runnings : sleepings;
+        Set<VirtualMachine> res = cache.get(n);
+        if (res != null) {
+            return res;
+        }
+        Collection<VirtualMachine> from;
+        if (parent != null) {
+            from = parent.hostedSet(n, state);
+        } else if (base.isOnline(n)) {
+            from = state == RUNNING ? base.getRunnings(n) : base.getSleepings(n);
+        } else {
+            from = Collections.emptySet();
+        }
+        res = new LinkedHashSet<VirtualMachine>();
+        //The VMs that left the node in this fork are discarded
+        for (VirtualMachine vm : from) {
+            Placement p = vms.get(vm);
+            if (p == null || (p.state == state && n.equals(p.host))) {
+                res.add(vm);
+            }
+        }
+        Set<VirtualMachine> mine = hosted.get(n);
+        if (mine != null) {
+            for (VirtualMachine vm : mine) {
+                if (vms.get(vm).state == state) {
+                    res.add(vm);
+                }
+            }
+        }
+        if (frozen) {
+            cache.put(n, res);
+        }
+        return res;
+    }
+
+    private static <E extends ManagedElement> ManagedElementSet<E> toSet(Collection<E> elems) {
+        ManagedElementSet<E> res = new SimpleManagedElementSet<E>();
+        res.addAll(elems);
+        return res;
+    }
+
+    /**
+     * The state of a VM, and its host if any.
+     */
+    private static final class Placement {
+
+        private final byte state;
+
+        private final Node host;
+
+        private Placement(byte state, Node host) {
+            this.state = state;
+            this.host = host;
+        }
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * A columnar, read-only snapshot of a configuration.
+ * Nodes and VMs are identified by their index and their attributes are stored in primitive arrays
+ * so statistics and checks are performed without walking the element sets.
+ * Large snapshots are analysed in parallel.
+ *
+ * @author Fabien Hermenier
+ */
+public class ConfigurationSnapshot {
+
+    /**
+     * State of an online node.
+     */
+    public static final byte ONLINE = 0;
+
+    /**
+     * State of an offline node.
+     */
+    public static final byte OFFLINE = 1;
+
+    /**
+     * State of a running VM.
+     */
+    public static final byte RUNNING = 0;
+
+    /**
+     * State of a sleeping VM.
+     */
+    public static final byte SLEEPING = 1;
+
+    /**
+     * State of a waiting VM.
+     */
+    public static final byte WAITING = 2;
+
+    /**
+     * The number of VMs from which the analysis is made in parallel.
+     */
+    static final int PARALLEL_THRESHOLD = 100000;
+
+    private String[] nodeNames;
+
+    private int[] nodeCPUCapacity;
+
+    private int[] nodeMemoryCapacity;
+
+    private byte[] nodeStates;
+
+    private String[] vmNames;
+
+    private int[] vmCPUConsumption;
+
+    private int[] vmCPUDemand;
+
+    private int[] vmMemoryConsumption;
+
+    private int[] vmMemoryDemand;
+
+    /**
+     * The index of the node hosting each VM. {@code -1} for a waiting VM.
+     */
+    private int[] vmHosts;
+
+    private byte[] vmStates;
+
+    private Map<String, Integer> nodeIdx;
+
+    private Map<String, Integer> vmIdx;
+
+    /**
+     * Make a snapshot of a configuration.
+     *
+     * @param cfg the configuration
+     */
+    public ConfigurationSnapshot(Configuration cfg) {
+        int nbNodes = cfg.getOnlines().size() + cfg.getOfflines().size();
+        nodeNames = new String[nbNodes];
+        nodeCPUCapacity = new int[nbNodes];
+        nodeMemoryCapacity = new int[nbNodes];
+        nodeStates = new byte[nbNodes];
+        nodeIdx = new HashMap<String, Integer>(nbNodes * 4 / 3 + 1);
+        int nbVMs = cfg.getRunnings().size() + cfg.getSleepings().size() + cfg.getWaitings().size();
+        vmNames = new String[nbVMs];
+        vmCPUConsumption = new int[nbVMs];
+        vmCPUDemand = new int[nbVMs];
+        vmMemoryConsumption = new int[nbVMs];
+        vmMemoryDemand = new int[nbVMs];
+        vmHosts = new int[nbVMs];
+        vmStates = new byte[nbVMs];
+        vmIdx = new HashMap<String, Integer>(nbVMs * 4 / 3 + 1);
+
+        int n = 0;
+        for (Node node : cfg.getOnlines()) {
+            addNode(n, node, ONLINE);
+            n++;
+        }
+        for (Node node : cfg.getOfflines()) {
+            addNode(n, node, OFFLINE);
+            n++;
+        }
+        int v = 0;
+        for (int i = 0; i < cfg.getOnlines().size(); i++) {
+            Node node = cfg.getOnlines().get(i);
+            for (VirtualMachine vm : cfg.getRunnings(node)) {
+                addVM(v++, vm, i, RUNNING);
+            }
+            for (VirtualMachine vm : cfg.getSleepings(node)) {
+                addVM(v++, vm, i, SLEEPING);
+            }
+        }
+        for (VirtualMachine vm : cfg.getWaitings()) {
+            addVM(v++, vm, -1, WAITING);
+        }
+    }
+
+    private void addNode(int i, Node n, byte state) {
+        nodeNames[i] = n.getName();
+        nodeCPUCapacity[i] = n.getCPUCapacity();
+        nodeMemoryCapacity[i] = n.getMemoryCapacity();
+        nodeStates[i] = state;
+        nodeIdx.put(n.getName(), i);
+    }
+
+    private void addVM(int i, VirtualMachine vm, int host, byte state) {
+        vmNames[i] = vm.getName();
+        vmCPUConsumption[i] = vm.getCPUConsumption();
+        vmCPUDemand[i] = vm.getCPUDemand();
+        vmMemoryConsumption[i] = vm.getMemoryConsumption();
+        vmMemoryDemand[i] = vm.getMemoryDemand();
+        vmHosts[i] = host;
+        vmStates[i] = state;
+        vmIdx.put(vm.getName(), i);
+    }
+
+    public int getNbNodes() {
+        return nodeNames.length;
+    }
+
+    public int getNbVirtualMachines() {
+        return vmNames.length;
+    }
+
+    /**
+     * Get the index of a node.
+     *
+     * @param n the node
+     * @return its index, {@code -1} if the node is not in the snapshot
+     */
+    public int indexOf(Node n) {
+        Integer i = nodeIdx.get(n.getName());
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * Get the index of a VM.
+     *
+     * @param vm the VM
+     * @return its index, {@code -1} if the VM is not in the snapshot
+     */
+    public int indexOf(VirtualMachine vm) {
+        Integer i = vmIdx.get(vm.getName());
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * Get the indexes of some VMs.
+     *
+     * @param vms the VMs
+     * @return their indexes. The VMs that are not in the snapshot are ignored
+     */
+    public int[] indexesOf(ManagedElementSet<VirtualMachine> vms) {
+        int[] idx = new int[vms.size()];
+        int nb = 0;
+        for (VirtualMachine vm : vms) {
+            int i = indexOf(vm);
+            if (i >= 0) {
+                idx[nb++] = i;
+            }
+        }
+        if (nb < idx.length) {
+            int[] cpy = new int[nb];
+            System.arraycopy(idx, 0, cpy, 0, nb);
+            return cpy;
+        }
+        return idx;
+    }
+
+    public String getNodeName(int n) {
+        return nodeNames[n];
+    }
+
+    public byte getNodeState(int n) {
+        return nodeStates[n];
+    }
+
+    public int getCPUCapacity(int n) {
+        return nodeCPUCapacity[n];
+    }
+
+    public int getMemoryCapacity(int n) {
+        return nodeMemoryCapacity[n];
+    }
+
+    public String getVirtualMachineName(int vm) {
+        return vmNames[vm];
+    }
+
+    public byte getVirtualMachineState(int vm) {
+        return vmStates[vm];
+    }
+
+    /**
+     * Get the node hosting a VM.
+     *
+     * @param vm the index of the VM
+     * @return the index of the node. {@code -1} for a waiting VM
+     */
+    public int getHost(int vm) {
+        return vmHosts[vm];
+    }
+
+    private int[] column(LoadReport.Resource r) {
+        switch (r) {
+            case cpuConsumption:
+                return vmCPUConsumption;
+            case cpuDemand:
+                return vmCPUDemand;
+            case memoryConsumption:
+                return vmMemoryConsumption;
+            default:
+                return vmMemoryDemand;
+        }
+    }
+
+    private int[] capacity(LoadReport.Resource r) {
+        if (r == LoadReport.Resource.cpuConsumption || r == LoadReport.Resource.cpuDemand) {
+            return nodeCPUCapacity;
+        }
+        return nodeMemoryCapacity;
+    }
+
+    /**
+     * Get the global load of a resource.
+     *
+     * @param r the resource
+     * @return the ratio between the resource usage of all the VMs and the capacity of the online nodes
+     */
+    public double getLoad(LoadReport.Resource r) {
+        int[] col = column(r);
+        int[] capa = capacity(r);
+        long used = 0;
+        long total = 0;
+        for (int v : col) {
+            used += v;
+        }
+        for (int n = 0; n < capa.length; n++) {
+            if (nodeStates[n] == ONLINE) {
+                total += capa[n];
+            }
+        }
+        return 1.0d * used / total;
+    }
+
+    /**
+     * Get the usage of a resource on each node.
+     * Only the running VMs are considered.
+     *
+     * @param r the resource
+     * @return the usage, indexed by node
+     */
+    public long[] getUsage(LoadReport.Resource r) {
+        final int[] col = column(r);
+        int nbChunks = vmNames.length < PARALLEL_THRESHOLD ? 1 : Workers.defaultSize();
+        final int chunkSize = Math.max(1, (vmNames.length + nbChunks - 1) / nbChunks);
+        List<Callable<long[]>> tasks = new ArrayList<Callable<long[]>>(nbChunks);
+        for (int from = 0; from < vmNames.length; from += chunkSize) {
+            final int f = from;
+            tasks.add(new Callable<long[]>() {
+                @Override
+                public long[] call() {
+                    return usage(col, f, Math.min(vmNames.length, f + chunkSize));
+                }
+            });
+        }
+        if (tasks.size() <= 1) {
+            return usage(col, 0, vmNames.length);
+        }
+        long[] res = new long[nodeNames.length];
+        for (long[] partial : Workers.invokeAll(tasks)) {
+            for (int n = 0; n < res.length; n++) {
+                res[n] += partial[n];
+            }
+        }
+        return res;
+    }
+
+    private long[] usage(int[] col, int from, int to) {
+        long[] res = new long[nodeNames.length];
+        for (int v = from; v < to; v++) {
+            if (vmStates[v] == RUNNING) {
+                res[vmHosts[v]] += col[v];
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Get the nodes that are currently overloaded,
+     * considering the CPU and the memory consumption of their running VMs.
+     *
+     * @return the indexes of the nodes
+     */
+    public int[] getCurrentlyOverloadedNodes() {
+        return overloaded(getUsage(LoadReport.Resource.cpuConsumption), getUsage(LoadReport.Resource.memoryConsumption));
+    }
+
+    /**
+     * Get the nodes that will be overloaded,
+     * considering the CPU and the memory demand of their running VMs.
+     *
+     * @return the indexes of the nodes
+     */
+    public int[] getFutureOverloadedNodes() {
+        return overloaded(getUsage(LoadReport.Resource.cpuDemand), getUsage(LoadReport.Resource.memoryDemand));
+    }
+
+    private int[] overloaded(long[] cpu, long[] mem) {
+        int[] buf = new int[nodeNames.length];
+        int nb = 0;
+        for (int n = 0; n < buf.length; n++) {
+            if (cpu[n] > nodeCPUCapacity[n] || mem[n] > nodeMemoryCapacity[n]) {
+                buf[nb++] = n;
+            }
+        }
+        int[] res = new int[nb];
+        System.arraycopy(buf, 0, res, 0, nb);
+        return res;
+    }
+
+    /**
+     * Check if running VMs are all hosted on some nodes, as stated by a {@link entropy.vjob.Fence} constraint.
+     *
+     * @param vms   the indexes of the VMs
+     * @param nodes the indexes of the allowed nodes
+     * @return {@code true} iff no running VM is outside the nodes
+     */
+    public boolean isFenced(int[] vms, int[] nodes) {
+        boolean[] allowed = new boolean[nodeNames.length];
+        for (int n : nodes) {
+            allowed[n] = true;
+        }
+        for (int v : vms) {
+            if (vmStates[v] == RUNNING && !allowed[vmHosts[v]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if running VMs are all hosted on distinct nodes, as stated by a {@link entropy.vjob.Spread} constraint.
+     *
+     * @param vms the indexes of the VMs
+     * @return {@code true} iff no node hosts two of the VMs
+     */
+    public boolean isSpread(int[] vms) {
+        boolean[] used = new boolean[nodeNames.length];
+        for (int v : vms) {
+            if (vmStates[v] == RUNNING) {
+                if (used[vmHosts[v]]) {
+                    return false;
+                }
+                used[vmHosts[v]] = true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if running VMs are all hosted on a single node, as stated by a {@link entropy.vjob.Gather} constraint.
+     *
+     * @param vms the indexes of the VMs
+     * @return {@code true} iff the VMs share the same node
+     */
+    public boolean isGathered(int[] vms) {
+        int host = -1;
+        for (int v : vms) {
+            if (vmStates[v] == RUNNING) {
+                if (host >= 0 && vmHosts[v] != host) {
+                    return false;
+                }
+                host = vmHosts[v];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if running VMs are hosted on nodes that do not host other running VMs,
+     * as stated by a {@link entropy.vjob.Lonely} constraint.
+     *
+     * @param vms the indexes of the VMs
+     * @return {@code true} iff the nodes hosting the VMs only host VMs of the set
+     */
+    public boolean isLonely(int[] vms) {
+        boolean[] in = new boolean[vmNames.length];
+        boolean[] hosts = new boolean[nodeNames.length];
+        for (int v : vms) {
+            in[v] = true;
+            if (vmStates[v] == RUNNING) {
+                hosts[vmHosts[v]] = true;
+            }
+        }
+        for (int v = 0; v < vmNames.length; v++) {
+            if (vmStates[v] == RUNNING && hosts[vmHosts[v]] && !in[v]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
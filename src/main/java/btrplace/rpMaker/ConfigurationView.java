@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.ManagedElementSet;
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
+
+/**
+ * The view of the placement of a configuration.
+ * All the operations are delegated to the configuration.
+ *
+ * @author Fabien Hermenier
+ */
+final class ConfigurationView implements PlacementView {
+
+    private final Configuration cfg;
+
+    /**
+     * Make a view of a configuration.
+     *
+     * @param cfg the configuration
+     */
+    ConfigurationView(Configuration cfg) {
+        this.cfg = cfg;
+    }
+
+    /**
+     * Get the configuration behind the view.
+     *
+     * @return the configuration
+     */
+    Configuration getConfiguration() {
+        return cfg;
+    }
+
+    @Override
+    public boolean isRunning(VirtualMachine vm) {
+        return cfg.isRunning(vm);
+    }
+
+    @Override
+    public Node getLocation(VirtualMachine vm) {
+        return cfg.getLocation(vm);
+    }
+
+    @Override
+    public Iterable<VirtualMachine> getRunnings(Node n) {
+        return cfg.getRunnings(n);
+    }
+
+    @Override
+    public Iterable<VirtualMachine> getSleepings(Node n) {
+        return cfg.getSleepings(n);
+    }
+
+    @Override
+    public ManagedElementSet<Node> getOnlines() {
+        return cfg.getOnlines();
+    }
+
+    @Override
+    public boolean setRunOn(VirtualMachine vm, Node n) {
+        return cfg.setRunOn(vm, n);
+    }
+
+    @Override
+    public boolean remove(VirtualMachine vm) {
+        return cfg.remove(vm);
+    }
+
+    @Override
+    public boolean addOffline(Node n) {
+        return cfg.addOffline(n);
+    }
+}
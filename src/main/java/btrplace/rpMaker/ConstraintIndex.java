@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.VirtualMachine;
+import entropy.vjob.Lonely;
+import entropy.vjob.PlacementConstraint;
+import entropy.vjob.VJob;
+
+import java.util.*;
+
+/**
+ * An index to retrieve the placement constraints that may be impacted by the move of a VM.
+ * Constraints focused on nodes, such as {@link Lonely}, may be violated by any VM
+ * that is moved on a node so they are indexed apart.
+ *
+ * @author Fabien Hermenier
+ */
+public class ConstraintIndex {
+
+    private Map<VirtualMachine, List<PlacementConstraint>> byVM;
+
+    private List<PlacementConstraint> nodeScoped;
+
+    private List<PlacementConstraint> all;
+
+    private DeltaChecker checker;
+
+    /**
+     * Index the constraints of some vjobs.
+     *
+     * @param vjobs the vjobs to index
+     */
+    public ConstraintIndex(List<VJob> vjobs) {
+        byVM = new HashMap<VirtualMachine, List<PlacementConstraint>>();
+        nodeScoped = new ArrayList<PlacementConstraint>();
+        all = new ArrayList<PlacementConstraint>();
+        for (VJob v : vjobs) {
+            for (PlacementConstraint c : v.getConstraints()) {
+                all.add(c);
+                if (isNodeScoped(c)) {
+                    nodeScoped.add(c);
+                } else {
+                    for (VirtualMachine vm : c.getAllVirtualMachines()) {
+                        List<PlacementConstraint> l = byVM.get(vm);
+                        if (l == null) {
+                            l = new ArrayList<PlacementConstraint>(2);
+                            byVM.put(vm, l);
+                        }
+                        l.add(c);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Indicate whether a constraint may be violated by a VM it does not involve.
+     *
+     * @param c the constraint
+     * @return {@code true} if the constraint is focused on nodes
+     */
+    public static boolean isNodeScoped(PlacementConstraint c) {
+        return c instanceof Lonely;
+    }
+
+    /**
+     * Get the constraints that involve a VM.
+     * The constraints focused on nodes are not included.
+     *
+     * @param vm the VM
+     * @return a list of constraints, may be empty
+     */
+    public List<PlacementConstraint> getConstraints(VirtualMachine vm) {
+        List<PlacementConstraint> l = byVM.get(vm);
+        if (l == null) {
+            return Collections.emptyList();
+        }
+        return l;
+    }
+
+    /**
+     * Get the constraints that are focused on nodes.
+     *
+     * @return a list of constraints, may be empty
+     */
+    public List<PlacementConstraint> getNodeScopedConstraints() {
+        return nodeScoped;
+    }
+
+    /**
+     * Group the VMs involved in some {@link Lonely} constraints.
+     * A VM in several constraints can only share its node with the VMs of all these constraints,
+     * so two VMs may share a node iff they belong to the same set of lonely constraints.
+     * Each distinct set is then identified by a group.
+     *
+     * @param cstrs the constraints to consider. The non-lonely ones are ignored
+     * @return for each VM involved in a lonely constraint, its group. The groups are non-negative integers
+     */
+    static Map<VirtualMachine, Integer> lonelyGroups(Collection<PlacementConstraint> cstrs) {
+        Map<VirtualMachine, Set<Integer>> memberships = new HashMap<VirtualMachine, Set<Integer>>();
+        int nb = 0;
+        for (PlacementConstraint c : cstrs) {
+            if (c instanceof Lonely) {
+                for (VirtualMachine vm : c.getAllVirtualMachines()) {
+                    Set<Integer> s = memberships.get(vm);
+                    if (s == null) {
+                        s = new TreeSet<Integer>();
+                        memberships.put(vm, s);
+                    }
+                    s.add(nb);
+                }
+                nb++;
+            }
+        }
+        Map<Set<Integer>, Integer> ids = new HashMap<Set<Integer>, Integer>();
+        Map<VirtualMachine, Integer> groups = new HashMap<VirtualMachine, Integer>(memberships.size() * 4 / 3 + 1);
+        for (Map.Entry<VirtualMachine, Set<Integer>> e : memberships.entrySet()) {
+            Integer g = ids.get(e.getValue());
+            if (g == null) {
+                g = ids.size();
+                ids.put(e.getValue(), g);
+            }
+            groups.put(e.getKey(), g);
+        }
+        return groups;
+    }
+
+    /**
+     * Get the checker to evaluate the moves of VMs incrementally.
+     * It is built on the first call.
+     *
+     * @return the checker
+     */
+    public synchronized DeltaChecker getDeltaChecker() {
+        if (checker == null) {
+            checker = new DeltaChecker(this, all);
+        }
+        return checker;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.ManagedElementSet;
+import entropy.configuration.Node;
+import entropy.configuration.SimpleManagedElementSet;
+import entropy.configuration.VirtualMachine;
+import entropy.vjob.*;
+
+import java.util.Map;
+
+/**
+ * Tools to copy and make placement constraints.
+ *
+ * @author Fabien Hermenier
+ */
+final class Constraints {
+
+    private Constraints() {
+    }
+
+    /**
+     * Copy a placement constraint onto other VMs.
+     * The nodes are not copied.
+     *
+     * @param c       the constraint to copy
+     * @param mapping the new VM for each VM involved in the constraint
+     * @return the copy of the constraint
+     * @throws UnsupportedOperationException if the constraint is not supported
+     * @see #make(String, ManagedElementSet, ManagedElementSet)
+     */
+    static PlacementConstraint copy(PlacementConstraint c, Map<VirtualMachine, VirtualMachine> mapping) {
+        String type = getType(c);
+        if (type == null) {
+            throw new UnsupportedOperationException("Unsupported constraint type '" + c.getClass().getName() + "'");
+        }
+        return make(type, map(c.getAllVirtualMachines(), mapping), c.getNodes());
+    }
+
+    /**
+     * Get the type of a constraint.
+     * The subclasses of the supported constraints are not supported, as a copy
+     * made from the type of their parent would lose their behaviour.
+     *
+     * @param c the constraint
+     * @return the type of the constraint, as expected by {@link #make(String, ManagedElementSet, ManagedElementSet)}.
+     *         {@code null} if the constraint is not supported
+     */
+    static String getType(PlacementConstraint c) {
+        Class<?> k = c.getClass();
+        if (k == Fence.class) {
+            return "Fence";
+        } else if (k == Ban.class) {
+            return "Ban";
+        } else if (k == Lonely.class) {
+            return "Lonely";
+        } else if (k == ContinuousSpread.class) {
+            return "ContinuousSpread";
+        } else if (k == LazySpread.class) {
+            return "LazySpread";
+        } else if (k == Gather.class) {
+            return "Gather";
+        } else if (k == Root.class) {
+            return "Root";
+        }
+        return null;
+    }
+
+    /**
+     * Indicate whether a constraint can be copied, or written and read back.
+     *
+     * @param c the constraint
+     * @return {@code true} iff the constraint is supported
+     */
+    static boolean isSupported(PlacementConstraint c) {
+        return getType(c) != null;
+    }
+
+    /**
+     * Make a placement constraint.
+     * Supported constraints are {@link Fence}, {@link Ban}, {@link Lonely}, {@link ContinuousSpread},
+     * {@link LazySpread}, {@link Gather} and {@link Root}.
+     *
+     * @param type  the type of the constraint, as returned by {@link #getType(PlacementConstraint)}
+     * @param vms   the involved VMs
+     * @param nodes the involved nodes. Ignored by the constraints that are not focused on nodes
+     * @return the constraint
+     * @throws UnsupportedOperationException if the constraint is not supported
+     */
+    static PlacementConstraint make(String type, ManagedElementSet<VirtualMachine> vms, ManagedElementSet<Node> nodes) {
+        if ("Fence".equals(type)) {
+            return new Fence(vms, nodes);
+        } else if ("Ban".equals(type)) {
+            return new Ban(vms, nodes);
+        } else if ("Lonely".equals(type)) {
+            return new Lonely(vms);
+        } else if ("ContinuousSpread".equals(type)) {
+            return new ContinuousSpread(vms);
+        } else if ("LazySpread".equals(type)) {
+            return new LazySpread(vms);
+        } else if ("Gather".equals(type)) {
+            return new Gather(vms);
+        } else if ("Root".equals(type)) {
+            return new Root(vms);
+        }
+        throw new UnsupportedOperationException("Unsupported constraint type '" + type + "'");
+    }
+
+    private static ManagedElementSet<VirtualMachine> map(ManagedElementSet<VirtualMachine> vms, Map<VirtualMachine, VirtualMachine> mapping) {
+        ManagedElementSet<VirtualMachine> res = new SimpleManagedElementSet<VirtualMachine>();
+        for (VirtualMachine vm : vms) {
+            VirtualMachine cpy = mapping.get(vm);
+            res.add(cpy != null ? cpy : vm);
+        }
+        return res;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.ManagedElementSet;
+import entropy.configuration.Node;
+import entropy.configuration.SimpleManagedElementSet;
+import entropy.configuration.VirtualMachine;
+import entropy.vjob.Fence;
+import entropy.vjob.PlacementConstraint;
+import entropy.vjob.VJob;
+
+import java.util.*;
+
+/**
+ * Tool to split a generation problem into independent sub-problems.
+ * A vjob whose VMs are all restricted by {@link Fence} constraints only interacts with the nodes of
+ * these constraints. Otherwise, it may interact with any online node. Vjobs sharing nodes,
+ * or VMs through their constraints, belong to the same sub-problem.
+ *
+ * @author Fabien Hermenier
+ */
+public final class Decomposer {
+
+    private Decomposer() {
+    }
+
+    /**
+     * Split a generation problem into independent sub-problems.
+     * The online nodes that are not involved in any sub-problem are not returned while
+     * the offline nodes are left out of the sub-problems as they cannot host any VM.
+     *
+     * @param onlines the online nodes
+     * @param jobs    the vjobs
+     * @return the independent sub-problems
+     */
+    public static List<InstanceSpec> decompose(ManagedElementSet<Node> onlines, List<VJob> jobs) {
+        int nbNodes = onlines.size();
+        Map<Node, Integer> nodeIdx = new HashMap<Node, Integer>(nbNodes * 4 / 3 + 1);
+        for (int i = 0; i < nbNodes; i++) {
+            nodeIdx.put(onlines.get(i), i);
+        }
+        //The elements are the online nodes, the vjobs, then a shared element that stands for any online node
+        int any = nbNodes + jobs.size();
+        int[] parents = new int[any + 1];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+        boolean anyLinked = false;
+        ConstraintIndex idx = new ConstraintIndex(jobs);
+        Map<VirtualMachine, Integer> owners = new HashMap<VirtualMachine, Integer>();
+        for (int j = 0; j < jobs.size(); j++) {
+            int v = nbNodes + j;
+            boolean fenced = true;
+            for (VirtualMachine vm : jobs.get(j).getVirtualMachines()) {
+                Integer other = owners.put(vm, v);
+                if (other != null) {
+                    union(parents, v, other);
+                }
+                boolean hasFence = false;
+                for (PlacementConstraint c : idx.getConstraints(vm)) {
+                    if (c instanceof Fence) {
+                        hasFence = true;
+                        for (Node n : c.getNodes()) {
+                            Integer i = nodeIdx.get(n);
+                            if (i != null) {
+                                union(parents, v, i);
+                            }
+                        }
+                    }
+                }
+                fenced &= hasFence;
+            }
+            if (!fenced) {
+                //The nodes are linked to the shared element once for all
+                if (!anyLinked) {
+                    for (int i = 0; i < nbNodes; i++) {
+                        union(parents, i, any);
+                    }
+                    anyLinked = true;
+                }
+                union(parents, v, any);
+            }
+        }
+        //Constraints linking VMs of several vjobs
+        for (VJob v : jobs) {
+            for (PlacementConstraint c : v.getConstraints()) {
+                int first = -1;
+                for (VirtualMachine vm : c.getAllVirtualMachines()) {
+                    Integer o = owners.get(vm);
+                    if (o != null) {
+                        if (first < 0) {
+                            first = o;
+                        } else {
+                            union(parents, first, o);
+                        }
+                    }
+                }
+            }
+        }
+
+        Map<Integer, InstanceSpec> components = new LinkedHashMap<Integer, InstanceSpec>();
+        for (int j = 0; j < jobs.size(); j++) {
+            component(components, find(parents, nbNodes + j)).getVJobs().add(jobs.get(j));
+        }
+        for (int i = 0; i < nbNodes; i++) {
+            InstanceSpec s = components.get(find(parents, i));
+            if (s != null) {
+                s.getOnlines().add(onlines.get(i));
+            }
+        }
+        return new ArrayList<InstanceSpec>(components.values());
+    }
+
+    private static InstanceSpec component(Map<Integer, InstanceSpec> components, int root) {
+        InstanceSpec s = components.get(root);
+        if (s == null) {
+            s = new InstanceSpec(new SimpleManagedElementSet<Node>(), new SimpleManagedElementSet<Node>(), new ArrayList<VJob>());
+            components.put(root, s);
+        }
+        return s;
+    }
+
+    private static int find(int[] parents, int x) {
+        while (parents[x] != x) {
+            parents[x] = parents[parents[x]];
+            x = parents[x];
+        }
+        return x;
+    }
+
+    private static void union(int[] parents, int x, int y) {
+        int rx = find(parents, x);
+        int ry = find(parents, y);
+        if (rx != ry) {
+            parents[rx] = ry;
+        }
+    }
+}
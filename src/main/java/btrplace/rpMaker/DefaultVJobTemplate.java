@@ -27,12 +27,17 @@ import entropy.vjob.DefaultVJob;
 import entropy.vjob.PlacementConstraint;
 import entropy.vjob.VJob;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Default implementation of {@link VJobTemplate}
- * TODO: handle placement constraints
+ * Default implementation of {@link VJobTemplate}.
+ * The placement constraints are copied onto the VMs of each instance.
+ * The supported constraints are {@link entropy.vjob.Fence}, {@link entropy.vjob.Ban}, {@link entropy.vjob.Lonely},
+ * {@link entropy.vjob.ContinuousSpread}, {@link entropy.vjob.LazySpread}, {@link entropy.vjob.Gather}
+ * and {@link entropy.vjob.Root}, but not their subclasses. Instantiating a template with another
+ * constraint fails with an {@link UnsupportedOperationException}, as for {@link Instance#copy()}.
  *
  * @author Fabien Hermenier
  */
@@ -46,6 +51,30 @@ public class DefaultVJobTemplate implements VJobTemplate {
 
     private String id;
 
+    /**
+     * Cached read-only union of the VMs. {@code null} when invalidated.
+     * It cannot be modified so it can be read by concurrent instantiations.
+     */
+    private volatile ManagedElementSet<VirtualMachine> allVMs;
+
+    /**
+     * Cached read-only union of the nodes. {@code null} when invalidated.
+     */
+    private volatile ManagedElementSet<Node> allNodes;
+
+    private boolean lean = false;
+
+    /**
+     * The profiles shared by the stamped VMs, for each template VM.
+     * Concurrent instantiations may refresh it at the same time.
+     */
+    private Map<VirtualMachine, ResourceProfile> profiles;
+
+    /**
+     * The number of instances from which a bulk instantiation is made in parallel.
+     */
+    static final int PARALLEL_THRESHOLD = 64;
+
     /**
      * Create a template from an existing VJob.
      *
@@ -54,7 +83,7 @@ public class DefaultVJobTemplate implements VJobTemplate {
      */
     public DefaultVJobTemplate(String id, VJob source) {
         this(id);
-        this.vms.addAll(source.getVirtualMachines());
+        addVirtualMachines(source.getVirtualMachines());
     }
 
     public DefaultVJobTemplate(String id) {
@@ -64,67 +93,244 @@ public class DefaultVJobTemplate implements VJobTemplate {
         this.constraints = new HashSet<PlacementConstraint>();
     }
 
+    /**
+     * Indicate whether the instances are made of {@link StampedVirtualMachine}.
+     *
+     * @return {@code true} if the memory-lean mode is enabled
+     */
+    public boolean isLean() {
+        return lean;
+    }
+
+    /**
+     * Enable or disable the memory-lean mode.
+     * In this mode, the VMs of the instances share one {@link ResourceProfile}
+     * per template VM until they are altered.
+     *
+     * @param b {@code true} to enable the mode
+     */
+    public void setLean(boolean b) {
+        this.lean = b;
+        profiles = b ? new ConcurrentHashMap<VirtualMachine, ResourceProfile>() : null;
+    }
+
     @Override
     public String id() {
         return this.id;
     }
 
+    /**
+     * {@inheritDoc}
+     * The union is cached until the template is modified. The returned set is read-only,
+     * use {@link ManagedElementSet#clone()} to get a modifiable copy.
+     */
     @Override
     public ManagedElementSet<VirtualMachine> getVirtualMachines() {
-        ManagedElementSet<VirtualMachine> allVMs = vms.clone();
-        for (PlacementConstraint c : constraints) {
-            allVMs.addAll(c.getAllVirtualMachines());
+        ManagedElementSet<VirtualMachine> all = allVMs;
+        if (all == null) {
+            ManagedElementSet<VirtualMachine> union = vms.clone();
+            for (PlacementConstraint c : constraints) {
+                union.addAll(c.getAllVirtualMachines());
+            }
+            all = new ReadOnlyElementSet<VirtualMachine>(union);
+            allVMs = all;
         }
-        return allVMs;
+        return all;
     }
 
+    /**
+     * {@inheritDoc}
+     * The union is cached until the template is modified. The returned set is read-only,
+     * use {@link ManagedElementSet#clone()} to get a modifiable copy.
+     */
     @Override
     public ManagedElementSet<Node> getNodes() {
-        ManagedElementSet<Node> allNodes = ns.clone();
-        for (PlacementConstraint c : constraints) {
-            allNodes.addAll(c.getNodes());
+        ManagedElementSet<Node> all = allNodes;
+        if (all == null) {
+            ManagedElementSet<Node> union = ns.clone();
+            for (PlacementConstraint c : constraints) {
+                union.addAll(c.getNodes());
+            }
+            all = new ReadOnlyElementSet<Node>(union);
+            allNodes = all;
         }
-        return allNodes;
+        return all;
+    }
+
+    /**
+     * Invalidate the cached views of the elements.
+     */
+    private void invalidate() {
+        allVMs = null;
+        allNodes = null;
     }
 
     @Override
     public boolean addConstraint(PlacementConstraint c) {
-        return this.constraints.add(c);
+        boolean ret = this.constraints.add(c);
+        if (ret) {
+            invalidate();
+        }
+        return ret;
     }
 
     @Override
     public boolean removeConstraint(PlacementConstraint c) {
-        return this.constraints.remove(c);
+        boolean ret = this.constraints.remove(c);
+        if (ret) {
+            invalidate();
+        }
+        return ret;
     }
 
+    /**
+     * {@inheritDoc}
+     * The set cannot be modified, use {@link #addConstraint(PlacementConstraint)}
+     * and {@link #removeConstraint(PlacementConstraint)} instead.
+     */
     @Override
     public Set<PlacementConstraint> getConstraints() {
-        return this.constraints;
+        return Collections.unmodifiableSet(this.constraints);
     }
 
     @Override
     public boolean addVirtualMachines(ManagedElementSet<VirtualMachine> e) {
-        return this.vms.addAll(e);
+        boolean ret = this.vms.addAll(e);
+        if (ret) {
+            invalidate();
+        }
+        return ret;
     }
 
     @Override
     public boolean addVirtualMachine(VirtualMachine vm) {
-        return this.vms.add(vm);
+        boolean ret = this.vms.add(vm);
+        if (ret) {
+            invalidate();
+        }
+        return ret;
     }
 
     @Override
     public VJob instantiate(String id, String prefix) {
+        ManagedElementSet<VirtualMachine> all = getVirtualMachines();
+        return instantiate(id, prefix, all, lean ? profiles(all) : null);
+    }
+
+    /**
+     * Instantiate the template.
+     *
+     * @param id     the id of the vjob
+     * @param prefix prefix to add to each VM involved in the template
+     * @param all    all the VMs involved in the template
+     * @param shared the profile to share for each VM. {@code null} to clone the VMs
+     * @return an instance of the template
+     */
+    private VJob instantiate(String id, String prefix, ManagedElementSet<VirtualMachine> all, Map<VirtualMachine, ResourceProfile> shared) {
         VJob instance = new DefaultVJob(id);
         //Got to clone every VM and constraint
+        Map<VirtualMachine, VirtualMachine> clones = new HashMap<VirtualMachine, VirtualMachine>(all.size() * 4 / 3 + 1);
+        for (VirtualMachine vm : all) {
+            //Name of the clone is the name of the VM prefixed by the RootID
+            VirtualMachine cpy;
+            if (shared != null) {
+                cpy = new StampedVirtualMachine(prefix, vm.getName(), shared.get(vm));
+            } else {
+                cpy = vm.clone();
+                cpy.rename(prefix.concat(vm.getName()));
+            }
+            clones.put(vm, cpy);
+        }
 
-        //Clone every isolated VM
+        //Isolated VMs
         for (VirtualMachine vm : vms) {
-            VirtualMachine cpy = vm.clone();
-            //Name of the clone is the name of the VM prefixed by the RootID
-            cpy.rename(new StringBuilder(prefix).append(vm.getName()).toString());
-            instance.addVirtualMachine(cpy);
+            instance.addVirtualMachine(clones.get(vm));
         }
 
+        for (PlacementConstraint c : constraints) {
+            instance.addConstraint(Constraints.copy(c, clones));
+        }
         return instance;
     }
+
+    /**
+     * Get the profiles to share for the template VMs.
+     * A new profile is made for the VMs that have been altered since the last instantiation.
+     *
+     * @param all all the VMs of the template
+     * @return the profile of each VM
+     */
+    private Map<VirtualMachine, ResourceProfile> profiles(ManagedElementSet<VirtualMachine> all) {
+        for (VirtualMachine vm : all) {
+            ResourceProfile p = profiles.get(vm);
+            if (p == null || !p.matches(vm)) {
+                profiles.put(vm, ResourceProfile.of(vm));
+            }
+        }
+        return profiles;
+    }
+
+    /**
+     * Instantiate the template several times.
+     * The identifier and the prefix of each instance are made from patterns
+     * formatted with the index of the instance, using {@link String#format(String, Object...)}.
+     * Large numbers of instances are made in parallel.
+     *
+     * @param count         the number of instances
+     * @param idPattern     the pattern for the id of the vjobs. For example {@code "vjob-%d"}
+     * @param prefixPattern the pattern for the prefix to add to each VM. For example {@code "v%d."}
+     * @return the instances of the template, ordered by index
+     * @throws UnsupportedOperationException if a constraint of the template is not supported
+     */
+    public List<VJob> instantiate(final int count, final String idPattern, final String prefixPattern) {
+        final ManagedElementSet<VirtualMachine> all = getVirtualMachines();
+        final Map<VirtualMachine, ResourceProfile> shared = lean ? profiles(all) : null;
+        final VJob[] instances = new VJob[count];
+        if (count < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < count; i++) {
+                instances[i] = instantiate(String.format(idPattern, i), String.format(prefixPattern, i), all, shared);
+            }
+            return Arrays.asList(instances);
+        }
+        int nbChunks = Workers.defaultSize();
+        final int chunkSize = (count + nbChunks - 1) / nbChunks;
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(nbChunks);
+        for (int c = 0; c < nbChunks; c++) {
+            final int from = c * chunkSize;
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int i = from; i < Math.min(count, from + chunkSize); i++) {
+                        instances[i] = instantiate(String.format(idPattern, i), String.format(prefixPattern, i), all, shared);
+                    }
+                    return null;
+                }
+            });
+        }
+        Workers.invokeAll(tasks);
+        return Arrays.asList(instances);
+    }
+
+    /**
+     * Instantiate any template several times.
+     * A {@link DefaultVJobTemplate} makes the instances in bulk, any other
+     * template is instantiated once per instance.
+     *
+     * @param t             the template to instantiate
+     * @param count         the number of instances
+     * @param idPattern     the pattern for the id of the vjobs. For example {@code "vjob-%d"}
+     * @param prefixPattern the pattern for the prefix to add to each VM. For example {@code "v%d."}
+     * @return the instances of the template, ordered by index
+     * @see #instantiate(int, String, String)
+     */
+    public static List<VJob> instantiate(VJobTemplate t, int count, String idPattern, String prefixPattern) {
+        if (t instanceof DefaultVJobTemplate) {
+            return ((DefaultVJobTemplate) t).instantiate(count, idPattern, prefixPattern);
+        }
+        List<VJob> instances = new ArrayList<VJob>(count);
+        for (int i = 0; i < count; i++) {
+            instances.add(t.instantiate(String.format(idPattern, i), String.format(prefixPattern, i)));
+        }
+        return instances;
+    }
 }
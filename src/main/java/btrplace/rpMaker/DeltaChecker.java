@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
+import entropy.vjob.*;
+
+import java.util.*;
+
+/**
+ * Check the placement constraints incrementally when a running VM is moved.
+ * Considering a configuration that satisfies the constraints, a checker decides whether
+ * the constraints are still satisfied once a VM has been moved on another node without
+ * checking the whole configuration:
+ * <ul>
+ * <li>{@link Fence} and {@link Ban} in O(1);</li>
+ * <li>{@link Lonely} and {@link Spread} in O(n), with n the number of VMs running on the destination node;</li>
+ * <li>{@link Gather} in O(n), with n the number of VMs involved in the constraint.</li>
+ * </ul>
+ * The other constraints are not supported and must be checked on the configuration.
+ *
+ * @author Fabien Hermenier
+ * @see ConstraintIndex#getDeltaChecker()
+ */
+public class DeltaChecker {
+
+    private ConstraintIndex idx;
+
+    private Map<PlacementConstraint, Set<Node>> nodes;
+
+    private Map<PlacementConstraint, Set<VirtualMachine>> vms;
+
+    /**
+     * For each VM involved in a lonely constraint, its group.
+     *
+     * @see ConstraintIndex#lonelyGroups(java.util.Collection)
+     */
+    private Map<VirtualMachine, Integer> lonelies;
+
+    private Set<VirtualMachine> unsupported;
+
+    /**
+     * Make a new checker.
+     *
+     * @param idx  the index of the constraints
+     * @param all  all the indexed constraints
+     */
+    DeltaChecker(ConstraintIndex idx, List<PlacementConstraint> all) {
+        this.idx = idx;
+        nodes = new HashMap<PlacementConstraint, Set<Node>>();
+        vms = new HashMap<PlacementConstraint, Set<VirtualMachine>>();
+        unsupported = new HashSet<VirtualMachine>();
+        for (PlacementConstraint c : all) {
+            if (c instanceof Fence || c instanceof Ban) {
+                nodes.put(c, new HashSet<Node>(c.getNodes()));
+            } else if (c instanceof Spread || c instanceof Gather) {
+                vms.put(c, new HashSet<VirtualMachine>(c.getAllVirtualMachines()));
+            } else if (!(c instanceof Lonely)) {
+                //The lonely constraints are checked through the lonely groups
+                unsupported.addAll(c.getAllVirtualMachines());
+            }
+        }
+        lonelies = ConstraintIndex.lonelyGroups(all);
+    }
+
+    /**
+     * Indicate whether a constraint can be checked incrementally.
+     *
+     * @param c the constraint
+     * @return {@code true} iff the constraint is supported
+     */
+    public static boolean isSupported(PlacementConstraint c) {
+        return c instanceof Fence || c instanceof Ban || c instanceof Lonely
+                || c instanceof Spread || c instanceof Gather;
+    }
+
+    /**
+     * Indicate whether all the constraints that may be impacted by the move of a VM
+     * can be checked incrementally.
+     *
+     * @param vm the VM to move
+     * @return {@code true} iff the move can be checked using {@link #accept(Configuration, VirtualMachine, Node)}
+     */
+    public boolean isSupported(VirtualMachine vm) {
+        return !unsupported.contains(vm);
+    }
+
+    /**
+     * Check if the constraints will still be satisfied once a running VM is moved.
+     * The configuration must satisfy the constraints before the move.
+     *
+     * @param cfg the configuration, before the move
+     * @param vm  the VM to move
+     * @param to  the destination node
+     * @return {@code true} iff the move does not violate any constraint
+     */
+    public boolean accept(Configuration cfg, VirtualMachine vm, Node to) {
+        return check(new ConfigurationView(cfg), vm, to);
+    }
+
+    /**
+     * Check if the constraints will still be satisfied once a running VM is moved.
+     * Callers that check many moves on the same configuration hold a single view
+     * instead of calling {@link #accept(Configuration, VirtualMachine, Node)}.
+     *
+     * @param v  the view of the configuration, before the move
+     * @param vm the VM to move
+     * @param to the destination node
+     * @return {@code true} iff the move does not violate any constraint
+     */
+    boolean accept(PlacementView v, VirtualMachine vm, Node to) {
+        return check(v, vm, to);
+    }
+
+    /**
+     * Check if the constraints will still be satisfied once a running VM is moved.
+     * The fork must satisfy the constraints before the move.
+     *
+     * @param f  the fork, before the move
+     * @param vm the VM to move
+     * @param to the destination node
+     * @return {@code true} iff the move does not violate any constraint
+     */
+    public boolean accept(ConfigurationFork f, VirtualMachine vm, Node to) {
+        return check(f, vm, to);
+    }
+
+    private boolean check(PlacementView cfg, VirtualMachine vm, Node to) {
+        if (!isLonelyCompatible(cfg, vm, to)) {
+            return false;
+        }
+        for (PlacementConstraint c : idx.getConstraints(vm)) {
+            if (!check(cfg, c, vm, to)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if a supported constraint involving a VM will still be satisfied once the VM is moved.
+     *
+     * @param cfg the configuration, before the move
+     * @param c   the constraint
+     * @param vm  the VM to move
+     * @param to  the destination node
+     * @return {@code true} iff the move does not violate the constraint
+     */
+    private boolean check(PlacementView cfg, PlacementConstraint c, VirtualMachine vm, Node to) {
+        if (c instanceof Fence) {
+            return nodes.get(c).contains(to);
+        } else if (c instanceof Ban) {
+            return !nodes.get(c).contains(to);
+        } else if (c instanceof Spread) {
+            Set<VirtualMachine> group = vms.get(c);
+            for (VirtualMachine x : cfg.getRunnings(to)) {
+                if (x != vm && group.contains(x)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (c instanceof Gather) {
+            //The other running VMs must already be on the destination node
+            for (VirtualMachine x : vms.get(c)) {
+                if (x != vm && cfg.isRunning(x) && !to.equals(cfg.getLocation(x))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        //Only the constraints of the supported VMs are checked
+        throw new IllegalStateException("Constraint '" + c.getClass().getSimpleName() + "' cannot be checked incrementally");
+    }
+
+    /**
+     * Check the lonely constraints: a VM can only share the destination node with the
+     * VMs of its own lonely group, if any.
+     */
+    private boolean isLonelyCompatible(PlacementView cfg, VirtualMachine vm, Node to) {
+        if (lonelies.isEmpty()) {
+            return true;
+        }
+        Integer g = lonelies.get(vm);
+        for (VirtualMachine x : cfg.getRunnings(to)) {
+            if (x != vm) {
+                Integer gx = lonelies.get(x);
+                if (g == null ? gx != null : !g.equals(gx)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
+import entropy.vjob.VJob;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A relaxation that scales down the CPU demand of the vjobs.
+ * When the destination configuration is known, only the vjobs having VMs on
+ * overloaded nodes are altered. Otherwise, all the vjobs are altered.
+ *
+ * @author Fabien Hermenier
+ */
+public class DemandScaling implements Relaxation {
+
+    private double factor;
+
+    private double minRatio;
+
+    /**
+     * Make a new relaxation.
+     *
+     * @param factor   the factor to apply on the CPU demand ratio of a vjob, btw 0.0 and 1.0 exclusive
+     * @param minRatio the CPU demand ratio under which a vjob is no longer scaled down
+     */
+    public DemandScaling(double factor, double minRatio) {
+        if (factor <= 0 || factor >= 1) {
+            throw new IllegalArgumentException("The factor must be between 0 and 1 exclusive: " + factor);
+        }
+        this.factor = factor;
+        this.minRatio = minRatio;
+    }
+
+    @Override
+    public boolean relax(Diagnosis d, InstanceSpec spec) {
+        List<VJob> targets = spec.getVJobs();
+        Configuration dst = d.getDestination();
+        if (dst != null && !d.getOverloadedNodes().isEmpty()) {
+            Set<Node> overloaded = new HashSet<Node>(d.getOverloadedNodes());
+            targets = new ArrayList<VJob>();
+            for (VJob v : spec.getVJobs()) {
+                for (VirtualMachine vm : v.getVirtualMachines()) {
+                    if (overloaded.contains(dst.getLocation(vm))) {
+                        targets.add(v);
+                        break;
+                    }
+                }
+            }
+        }
+        boolean relaxed = false;
+        for (VJob v : targets) {
+            if (v.getVirtualMachines().isEmpty()) {
+                continue;
+            }
+            double r = VJobAlterer.getCPUDemandRatio(v);
+            if (r > minRatio) {
+                VJobAlterer.setCPUDemandRatio(v, Math.max(minRatio, r * factor));
+                relaxed = true;
+            }
+        }
+        return relaxed;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.Configurations;
+import entropy.configuration.ManagedElementSet;
+import entropy.configuration.Node;
+import entropy.configuration.SimpleManagedElementSet;
+import entropy.plan.PlanException;
+import entropy.vjob.PlacementConstraint;
+import entropy.vjob.VJob;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The reasons that made a generation fail.
+ * Either the plan module failed, or its destination configuration
+ * has overloaded nodes or unsatisfied placement constraints.
+ *
+ * @author Fabien Hermenier
+ */
+public class Diagnosis {
+
+    private PlanException error;
+
+    private Configuration dst;
+
+    private ManagedElementSet<Node> overloaded;
+
+    private List<PlacementConstraint> unsatisfied;
+
+    /**
+     * Make a diagnosis for a plan module that failed.
+     *
+     * @param error the error thrown by the plan module
+     */
+    public Diagnosis(PlanException error) {
+        this.error = error;
+        this.overloaded = new SimpleManagedElementSet<Node>();
+        this.unsatisfied = Collections.emptyList();
+    }
+
+    /**
+     * Make a diagnosis for a destination configuration.
+     *
+     * @param dst  the destination configuration computed by the plan module
+     * @param jobs the vjobs that were considered
+     */
+    public Diagnosis(Configuration dst, List<VJob> jobs) {
+        this.dst = dst;
+        this.overloaded = Configurations.futureOverloadedNodes(dst);
+        this.unsatisfied = new ArrayList<PlacementConstraint>();
+        for (VJob v : jobs) {
+            for (PlacementConstraint c : v.getConstraints()) {
+                if (!c.isSatisfied(dst)) {
+                    unsatisfied.add(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the error thrown by the plan module.
+     *
+     * @return the error if any. {@code null} otherwise
+     */
+    public PlanException getError() {
+        return error;
+    }
+
+    /**
+     * Get the destination configuration computed by the plan module.
+     *
+     * @return the configuration. {@code null} if the plan module failed
+     */
+    public Configuration getDestination() {
+        return dst;
+    }
+
+    /**
+     * Get the nodes that are overloaded in the destination configuration.
+     *
+     * @return a set of nodes, may be empty
+     */
+    public ManagedElementSet<Node> getOverloadedNodes() {
+        return overloaded;
+    }
+
+    /**
+     * Get the placement constraints that are not satisfied in the destination configuration.
+     *
+     * @return a list of constraints, may be empty
+     */
+    public List<PlacementConstraint> getUnsatisfiedConstraints() {
+        return unsatisfied;
+    }
+
+    /**
+     * Indicate whether the destination configuration is a valid generated configuration.
+     *
+     * @return {@code true} iff the plan module succeeded and the destination is viable
+     */
+    public boolean isFeasible() {
+        return error == null && overloaded.isEmpty() && unsatisfied.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        if (error != null) {
+            return "failure: " + error.getMessage();
+        }
+        return overloaded.size() + " overloaded node(s), " + unsatisfied.size() + " unsatisfied constraint(s)";
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+/**
+ * A listener to get the results of a batch generation as soon as they are available.
+ * The listener is always called from the thread that started the batch.
+ *
+ * @author Fabien Hermenier
+ */
+public interface GenerationListener {
+
+    /**
+     * Notify the generation of an instance has ended.
+     *
+     * @param res the result of the generation
+     */
+    void generated(GenerationResult res);
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.Configuration;
+
+/**
+ * The result of the generation of one instance.
+ * When the generation failed, there is no configuration and
+ * the error that stopped the plan module, if any, is available.
+ *
+ * @author Fabien Hermenier
+ */
+public class GenerationResult {
+
+    private int index;
+
+    private InstanceSpec spec;
+
+    private Configuration cfg;
+
+    private Exception error;
+
+    /**
+     * Make a new result.
+     *
+     * @param index the position of the specification in the batch
+     * @param spec  the specification of the instance
+     * @param cfg   the generated configuration. {@code null} if the generation failed
+     * @param error the error that occurred during the generation. May be {@code null}
+     */
+    public GenerationResult(int index, InstanceSpec spec, Configuration cfg, Exception error) {
+        this.index = index;
+        this.spec = spec;
+        this.cfg = cfg;
+        this.error = error;
+    }
+
+    /**
+     * Get the position of the specification in the batch.
+     *
+     * @return a positive integer
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Get the specification of the instance.
+     *
+     * @return the specification
+     */
+    public InstanceSpec getSpec() {
+        return spec;
+    }
+
+    /**
+     * Get the generated configuration.
+     *
+     * @return the configuration, {@code null} if the generation failed
+     */
+    public Configuration getConfiguration() {
+        return cfg;
+    }
+
+    /**
+     * Get the error that prevented the generation.
+     * When the generation failed without error, the destination configuration
+     * computed by the plan module had overloaded nodes.
+     *
+     * @return the error if any. {@code null} otherwise
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * Indicate whether the generation succeeded.
+     *
+     * @return {@code true} iff a configuration has been generated
+     */
+    public boolean isSuccessful() {
+        return cfg != null;
+    }
+}
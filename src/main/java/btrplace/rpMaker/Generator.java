@@ -20,12 +20,17 @@
 package btrplace.rpMaker;
 
 import entropy.configuration.*;
+import entropy.plan.CustomizablePlannerModule;
 import entropy.plan.Plan;
 import entropy.plan.PlanException;
 import entropy.plan.TimedReconfigurationPlan;
+import entropy.vjob.Ban;
+import entropy.vjob.Fence;
+import entropy.vjob.PlacementConstraint;
 import entropy.vjob.VJob;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Tool to generate a configuration.
@@ -52,6 +57,469 @@ public final class Generator {
                                          ManagedElementSet<Node> onlines,
                                          ManagedElementSet<Node> offlines,
                                          List<VJob> jobs) {
+        try {
+            return solve(rp, onlines, offlines, jobs);
+        } catch (PlanException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Generate a configuration using a greedy placement first.
+     * The plan module is only used when the heuristic failed to place all the VMs
+     * while satisfying the constraints and the resource demand.
+     *
+     * @param rp       the plan module to use as a fallback
+     * @param onlines  all the online nodes that will compose the configuration
+     * @param offlines all the offline nodes that will compose the configuration
+     * @param jobs     the list of vjobs to consider
+     * @return the generate configuration
+     * @see GreedyPlacement
+     */
+    public static Configuration quickGenerate(Plan rp,
+                                              ManagedElementSet<Node> onlines,
+                                              ManagedElementSet<Node> offlines,
+                                              List<VJob> jobs) {
+        ManagedElementSet<VirtualMachine> runnings = new SimpleManagedElementSet<VirtualMachine>();
+        Configuration cfg = makeSource(onlines, offlines, jobs, runnings);
+        if (GreedyPlacement.place(cfg, runnings, jobs).isEmpty() && GreedyPlacement.isViable(cfg, jobs)) {
+            return cfg;
+        }
+        return generate(rp, onlines, offlines, jobs);
+    }
+
+    /**
+     * Generate a configuration from a previous one.
+     * The VMs keep their previous placement as long as their node is still online, not overloaded,
+     * and their constraints are satisfied. The new and the displaced VMs are placed using a greedy
+     * placement first, then using the plan module if the heuristic failed.
+     *
+     * @param rp       the plan module to use as a fallback
+     * @param previous the previous configuration
+     * @param onlines  all the online nodes that will compose the configuration
+     * @param offlines all the offline nodes that will compose the configuration
+     * @param jobs     the list of vjobs to consider
+     * @return the generated configuration. {@code null} if the generation failed
+     * @see GreedyPlacement
+     */
+    public static Configuration incrementalGenerate(Plan rp,
+                                                    Configuration previous,
+                                                    ManagedElementSet<Node> onlines,
+                                                    ManagedElementSet<Node> offlines,
+                                                    List<VJob> jobs) {
+        ManagedElementSet<VirtualMachine> runnings = new SimpleManagedElementSet<VirtualMachine>();
+        Configuration cfg = makeSource(onlines, offlines, jobs, runnings, previous);
+        evictInvalid(cfg, jobs);
+
+        ManagedElementSet<VirtualMachine> displaced = cfg.getWaitings().clone();
+        if (GreedyPlacement.place(cfg, displaced, jobs).isEmpty() && GreedyPlacement.isViable(cfg, jobs)) {
+            return cfg;
+        }
+        ManagedElementSet<VirtualMachine> empty = new SimpleManagedElementSet<VirtualMachine>();
+        try {
+            TimedReconfigurationPlan p = rp.compute(cfg, runnings, empty, empty, empty, cfg.getOnlines(), cfg.getOfflines(), jobs);
+            Diagnosis d = new Diagnosis(p.getDestination(), jobs);
+            return d.isFeasible() ? d.getDestination() : null;
+        } catch (PlanException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Generate a batch of configurations in parallel.
+     * Each worker uses its own plan module.
+     * The results are given to the listener, in the order they are produced, from the calling thread.
+     * A failed generation is notified as well.
+     *
+     * @param f         the factory to create the plan module of each worker
+     * @param specs     the specifications of the instances to generate
+     * @param nbWorkers the number of workers
+     * @param l         the listener that will receive the results
+     * @throws InterruptedException if the calling thread has been interrupted while waiting for a result.
+     *                              The remaining generations are then cancelled
+     */
+    public static void generate(final PlanFactory f,
+                                List<InstanceSpec> specs,
+                                int nbWorkers,
+                                GenerationListener l) throws InterruptedException {
+        //One plan module per worker as they are not thread-safe
+        final ThreadLocal<Plan> plans = new ThreadLocal<Plan>() {
+            @Override
+            protected Plan initialValue() {
+                return f.build();
+            }
+        };
+        ExecutorService pool = Workers.newPool(nbWorkers);
+        try {
+            CompletionService<GenerationResult> cs = new ExecutorCompletionService<GenerationResult>(pool);
+            int idx = 0;
+            for (final InstanceSpec spec : specs) {
+                final int i = idx++;
+                cs.submit(new Callable<GenerationResult>() {
+                    @Override
+                    public GenerationResult call() {
+                        try {
+                            Configuration cfg = solve(plans.get(), spec.getOnlines(), spec.getOfflines(), spec.getVJobs());
+                            return new GenerationResult(i, spec, cfg, null);
+                        } catch (Exception e) {
+                            return new GenerationResult(i, spec, null, e);
+                        }
+                    }
+                });
+            }
+            for (int i = 0; i < specs.size(); i++) {
+                try {
+                    l.generated(cs.take().get());
+                } catch (ExecutionException e) {
+                    //Not possible, every exception is caught in the task
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Generate a batch of configurations in parallel.
+     * There is one worker per available processor.
+     *
+     * @param f     the factory to create the plan module of each worker
+     * @param specs the specifications of the instances to generate
+     * @param l     the listener that will receive the results
+     * @throws InterruptedException if the calling thread has been interrupted while waiting for a result
+     * @see #generate(PlanFactory, java.util.List, int, GenerationListener)
+     */
+    public static void generate(PlanFactory f, List<InstanceSpec> specs, GenerationListener l) throws InterruptedException {
+        generate(f, specs, Workers.defaultSize(), l);
+    }
+
+    /**
+     * Generate a configuration by racing several plan modules.
+     * Each plan module works on the same input in parallel. The first viable configuration
+     * is returned as soon as it is available. The other computations are interrupted and
+     * each {@link CustomizablePlannerModule} gets the timeout as the time limit of its solver
+     * so the losers stop by themselves even if they ignore the interruption. The losers
+     * may then still be in use for a while once the method returned: their previous time limits
+     * are restored in the background once they stopped.
+     *
+     * @param portfolio the plan modules to race. Each module must be a distinct instance
+     * @param onlines   all the online nodes that will compose the configuration
+     * @param offlines  all the offline nodes that will compose the configuration
+     * @param jobs      the list of vjobs to consider
+     * @param timeout   the maximum duration of the race
+     * @param unit      the unit of the timeout
+     * @return the generated configuration. {@code null} if no plan module succeeded before the timeout
+     * @throws InterruptedException if the calling thread has been interrupted while waiting for the race
+     */
+    public static Configuration portfolioGenerate(List<Plan> portfolio,
+                                                  final ManagedElementSet<Node> onlines,
+                                                  final ManagedElementSet<Node> offlines,
+                                                  final List<VJob> jobs,
+                                                  long timeout,
+                                                  TimeUnit unit) throws InterruptedException {
+        int[] prevLimits = new int[portfolio.size()];
+        boolean[] limited = new boolean[portfolio.size()];
+        for (int i = 0; i < portfolio.size(); i++) {
+            Plan rp = portfolio.get(i);
+            if (rp instanceof CustomizablePlannerModule) {
+                CustomizablePlannerModule cp = (CustomizablePlannerModule) rp;
+                prevLimits[i] = cp.getTimeLimit();
+                limited[i] = true;
+                cp.setTimeLimit(toSeconds(timeout, unit));
+            }
+        }
+        ExecutorService pool = Workers.newPool(portfolio.size());
+        CompletionService<Configuration> race = new ExecutorCompletionService<Configuration>(pool);
+        List<Future<Configuration>> runs = new ArrayList<Future<Configuration>>(portfolio.size());
+        try {
+            for (final Plan rp : portfolio) {
+                runs.add(race.submit(new Callable<Configuration>() {
+                    @Override
+                    public Configuration call() throws PlanException {
+                        return solve(rp, onlines, offlines, jobs);
+                    }
+                }));
+            }
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            for (int i = 0; i < runs.size(); i++) {
+                Future<Configuration> f = race.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (f == null) {
+                    //Out of time
+                    return null;
+                }
+                try {
+                    Configuration dst = f.get();
+                    if (dst != null) {
+                        return dst;
+                    }
+                } catch (ExecutionException e) {
+                    //Not a candidate for the race
+                }
+            }
+            return null;
+        } finally {
+            //The modules that are over are released now, the others once they stopped
+            final List<Plan> running = new ArrayList<Plan>();
+            final List<Integer> runningLimits = new ArrayList<Integer>();
+            for (int i = 0; i < portfolio.size(); i++) {
+                if (!limited[i]) {
+                    continue;
+                }
+                CustomizablePlannerModule cp = (CustomizablePlannerModule) portfolio.get(i);
+                if (i < runs.size() && !runs.get(i).isDone()) {
+                    running.add(portfolio.get(i));
+                    runningLimits.add(prevLimits[i]);
+                } else {
+                    cp.setTimeLimit(prevLimits[i]);
+                }
+            }
+            Workers.release(pool, new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < running.size(); i++) {
+                        ((CustomizablePlannerModule) running.get(i)).setTimeLimit(runningLimits.get(i));
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Generate a configuration within a time budget.
+     * The plan module runs in a worker and has the budget to compute a feasible configuration.
+     * A {@link CustomizablePlannerModule} also gets the budget, in whole seconds, as the time limit
+     * of its solver so it provides its best configuration before the end of the budget.
+     * Once the budget is exhausted, the worker is interrupted but the method does not wait for it:
+     * the plan module may then still be in use for a while after the method returned, and its
+     * previous time limit is only restored once it stopped.
+     * If the plan module failed or its configuration is not viable, the VMs are placed
+     * using a greedy placement that starts from the configuration of the plan module, if any,
+     * and that may only be partial. This last step is not bounded by the budget but it is
+     * cheap compared to the plan module.
+     *
+     * @param rp       the plan module to use
+     * @param onlines  all the online nodes that will compose the configuration
+     * @param offlines all the offline nodes that will compose the configuration
+     * @param jobs     the list of vjobs to consider
+     * @param timeout  the time budget for the plan module
+     * @param unit     the unit of the timeout
+     * @return the result of the generation
+     * @throws InterruptedException if the calling thread has been interrupted while waiting for the plan module
+     * @see GreedyPlacement
+     */
+    public static BoundedResult boundedGenerate(final Plan rp,
+                                                final ManagedElementSet<Node> onlines,
+                                                final ManagedElementSet<Node> offlines,
+                                                final List<VJob> jobs,
+                                                long timeout,
+                                                TimeUnit unit) throws InterruptedException {
+        final CustomizablePlannerModule cp = rp instanceof CustomizablePlannerModule ? (CustomizablePlannerModule) rp : null;
+        final int prevLimit = cp != null ? cp.getTimeLimit() : 0;
+        if (cp != null) {
+            cp.setTimeLimit(toSeconds(timeout, unit));
+        }
+        ExecutorService pool = Workers.newPool(1);
+        Future<Configuration> f = pool.submit(new Callable<Configuration>() {
+            @Override
+            public Configuration call() throws PlanException {
+                return destination(rp, onlines, offlines, jobs);
+            }
+        });
+        Configuration dst = null;
+        try {
+            dst = f.get(timeout, unit);
+        } catch (ExecutionException e) {
+            //The plan module failed, the heuristic will provide the partial placement
+            dst = null;
+        } catch (TimeoutException e) {
+            //No answer in time, the heuristic will provide the partial placement
+            dst = null;
+        } finally {
+            Runnable restore = new Runnable() {
+                @Override
+                public void run() {
+                    if (cp != null) {
+                        cp.setTimeLimit(prevLimit);
+                    }
+                }
+            };
+            if (f.isDone()) {
+                pool.shutdown();
+                restore.run();
+            } else {
+                //The caller does not wait for a plan module that ignores the interruption
+                Workers.release(pool, restore);
+            }
+        }
+        if (dst != null && GreedyPlacement.isViable(dst, jobs)) {
+            return new BoundedResult(BoundedResult.Status.feasible, dst, new SimpleManagedElementSet<VirtualMachine>());
+        }
+
+        //Keep the valid part of the best configuration of the plan module, if any
+        ManagedElementSet<VirtualMachine> runnings = new SimpleManagedElementSet<VirtualMachine>();
+        Configuration cfg = makeSource(onlines, offlines, jobs, runnings, dst);
+        evictInvalid(cfg, jobs);
+        ManagedElementSet<VirtualMachine> unplaced = GreedyPlacement.place(cfg, cfg.getWaitings().clone(), jobs);
+        if (unplaced.isEmpty() && GreedyPlacement.isViable(cfg, jobs)) {
+            return new BoundedResult(BoundedResult.Status.feasible, cfg, unplaced);
+        } else if (unplaced.size() == runnings.size() && !runnings.isEmpty()) {
+            return new BoundedResult(BoundedResult.Status.failed, null, unplaced);
+        }
+        return new BoundedResult(BoundedResult.Status.partial, cfg, unplaced);
+    }
+
+    /**
+     * Convert a timeout to a solver time limit.
+     * The limit is rounded down so the solver stops within the timeout, unless the
+     * timeout is shorter than the smallest limit.
+     *
+     * @param timeout the timeout
+     * @param unit    the unit of the timeout
+     * @return the timeout in whole seconds. At least 1
+     */
+    private static int toSeconds(long timeout, TimeUnit unit) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, unit.toSeconds(timeout)));
+    }
+
+    /**
+     * Generate a configuration by splitting the problem into independent sub-problems.
+     * The sub-problems are solved in parallel, each with its own plan module,
+     * then their destination configurations are merged. The merged configuration is
+     * diagnosed as a whole before being returned.
+     *
+     * @param f         the factory to create the plan module of each worker
+     * @param onlines   all the online nodes that will compose the configuration
+     * @param offlines  all the offline nodes that will compose the configuration
+     * @param jobs      the list of vjobs to consider
+     * @param nbWorkers the number of workers
+     * @return the generated configuration. {@code null} if one of the sub-problems cannot be solved
+     *         or if the merged configuration has an overloaded node or an unsatisfied constraint
+     * @throws InterruptedException if the calling thread has been interrupted while waiting for the sub-problems
+     * @see Decomposer
+     * @see Diagnosis
+     */
+    public static Configuration decomposedGenerate(PlanFactory f,
+                                                   ManagedElementSet<Node> onlines,
+                                                   ManagedElementSet<Node> offlines,
+                                                   List<VJob> jobs,
+                                                   int nbWorkers) throws InterruptedException {
+        List<InstanceSpec> parts = Decomposer.decompose(onlines, jobs);
+        final Configuration merged = new SimpleConfiguration();
+        for (Node n : onlines) {
+            merged.addOnline(n);
+        }
+        for (Node n : offlines) {
+            merged.addOffline(n);
+        }
+        final boolean[] failed = {false};
+        generate(f, parts, nbWorkers, new GenerationListener() {
+            @Override
+            public void generated(GenerationResult res) {
+                if (!res.isSuccessful()) {
+                    failed[0] = true;
+                } else if (!failed[0]) {
+                    Configuration dst = res.getConfiguration();
+                    for (Node n : dst.getOnlines()) {
+                        for (VirtualMachine vm : dst.getRunnings(n)) {
+                            merged.setRunOn(vm, n);
+                        }
+                    }
+                }
+            }
+        });
+        if (failed[0]) {
+            return null;
+        }
+        //The sub-problems are independent but nothing was checked across them
+        Diagnosis d = new Diagnosis(merged, jobs);
+        return d.isFeasible() ? merged : null;
+    }
+
+    /**
+     * Generate a configuration, relaxing the specification as long as the generation fails.
+     * After each failure, the reasons are diagnosed and given to the relaxation.
+     * The next generation then starts from the placement of the last destination
+     * configuration, if any: the VMs stay running on their node if it is still online.
+     *
+     * @param rp        the plan module to use
+     * @param spec      the specification of the instance. It is altered in place by the relaxations
+     * @param r         the relaxation to apply after each failure
+     * @param maxRounds the maximum number of relaxations
+     * @return the generated configuration. {@code null} if the generation still failed after
+     *         {@code maxRounds} relaxations or if there was nothing left to relax
+     */
+    public static Configuration relaxedGenerate(Plan rp, InstanceSpec spec, Relaxation r, int maxRounds) {
+        Configuration hint = null;
+        for (int round = 0; ; round++) {
+            Diagnosis d = diagnose(rp, spec, hint);
+            if (d.isFeasible()) {
+                return d.getDestination();
+            }
+            if (round == maxRounds || !r.relax(d, spec)) {
+                return null;
+            }
+            if (d.getDestination() != null) {
+                hint = d.getDestination();
+            }
+        }
+    }
+
+    /**
+     * Compute a configuration and diagnose it.
+     *
+     * @param rp   the plan module to use
+     * @param spec the specification of the instance
+     * @param hint a previous placement to start from. May be {@code null}
+     * @return the diagnosis of the computed configuration
+     */
+    public static Diagnosis diagnose(Plan rp, InstanceSpec spec, Configuration hint) {
+        ManagedElementSet<VirtualMachine> runnings = new SimpleManagedElementSet<VirtualMachine>();
+        Configuration cfg = makeSource(spec.getOnlines(), spec.getOfflines(), spec.getVJobs(), runnings, hint);
+        ManagedElementSet<VirtualMachine> empty = new SimpleManagedElementSet<VirtualMachine>();
+        try {
+            TimedReconfigurationPlan p = rp.compute(cfg, runnings, empty, empty, empty, cfg.getOnlines(), cfg.getOfflines(), spec.getVJobs());
+            return new Diagnosis(p.getDestination(), spec.getVJobs());
+        } catch (PlanException e) {
+            return new Diagnosis(e);
+        }
+    }
+
+    /**
+     * Make the source configuration of a generation.
+     * The online and the offline nodes are set while the VMs are all waiting.
+     *
+     * @param onlines  the online nodes
+     * @param offlines the offline nodes
+     * @param jobs     the vjobs to consider
+     * @param runnings a set that will be filled with the VMs that will have to be running
+     * @return the source configuration
+     */
+    static Configuration makeSource(ManagedElementSet<Node> onlines,
+                                    ManagedElementSet<Node> offlines,
+                                    List<VJob> jobs,
+                                    ManagedElementSet<VirtualMachine> runnings) {
+        return makeSource(onlines, offlines, jobs, runnings, null);
+    }
+
+    /**
+     * Make the source configuration of a generation from a previous placement.
+     * The VMs that were running on a node that is still online stay running on it,
+     * even if the node is overloaded, so the caller decides which of them to evict.
+     * The other VMs are waiting.
+     *
+     * @param onlines  the online nodes
+     * @param offlines the offline nodes
+     * @param jobs     the vjobs to consider
+     * @param runnings a set that will be filled with the VMs that will have to be running
+     * @param hint     the previous placement. May be {@code null}
+     * @return the source configuration
+     */
+    static Configuration makeSource(ManagedElementSet<Node> onlines,
+                                    ManagedElementSet<Node> offlines,
+                                    List<VJob> jobs,
+                                    ManagedElementSet<VirtualMachine> runnings,
+                                    Configuration hint) {
         Configuration cfg = new SimpleConfiguration();
         for (Node n : onlines) {
             cfg.addOnline(n);
@@ -60,28 +528,118 @@ public final class Generator {
             cfg.addOffline(n);
         }
 
-        //Every running VM must be in a waiting state
-        ManagedElementSet<VirtualMachine> runnings = new SimpleManagedElementSet<VirtualMachine>();
+        //Every running VM must be in a waiting state, unless it can stay on its previous node
         for (VJob v : jobs) {
             for (VirtualMachine vm : v.getVirtualMachines()) {
-                if (!cfg.isWaiting(vm)) {
-                    cfg.addWaiting(vm);
+                if (!cfg.isWaiting(vm) && !cfg.isRunning(vm)) {
+                    Node n = hint == null || !hint.isRunning(vm) ? null : hint.getLocation(vm);
+                    if (n != null && cfg.isOnline(n)) {
+                        cfg.setRunOn(vm, n);
+                    } else {
+                        cfg.addWaiting(vm);
+                    }
                     runnings.add(vm);
                 }
             }
         }
+        return cfg;
+    }
 
-        ManagedElementSet<VirtualMachine> empty = new SimpleManagedElementSet<VirtualMachine>();
-        try {
-            TimedReconfigurationPlan p = rp.compute(cfg, runnings, empty, empty, empty, cfg.getOnlines(), cfg.getOfflines(), jobs);
-            Configuration dst = p.getDestination();
-            if (!Configurations.futureOverloadedNodes(dst).isEmpty()) {
-                return null;
+    /**
+     * Make waiting the running VMs that overload their node or violate a constraint.
+     * On an overloaded node, the VMs with the biggest demand for the overloaded resources are evicted first.
+     *
+     * @param cfg  the configuration to alter
+     * @param jobs the vjobs to check
+     */
+    private static void evictInvalid(Configuration cfg, List<VJob> jobs) {
+        for (final Node n : Configurations.futureOverloadedNodes(cfg)) {
+            List<VirtualMachine> vms = new ArrayList<VirtualMachine>(cfg.getRunnings(n));
+            int cpu = 0, mem = 0;
+            for (VirtualMachine vm : vms) {
+                cpu += vm.getCPUDemand();
+                mem += vm.getMemoryDemand();
             }
+            final boolean cpuOverloaded = cpu > n.getCPUCapacity();
+            final boolean memOverloaded = mem > n.getMemoryCapacity();
+            Collections.sort(vms, new Comparator<VirtualMachine>() {
+                @Override
+                public int compare(VirtualMachine vm1, VirtualMachine vm2) {
+                    return Double.compare(weight(vm2), weight(vm1));
+                }
 
-            return p.getDestination();
-        } catch (PlanException e) {
+                //The demand for the overloaded resources, relatively to the capacity of the node
+                private double weight(VirtualMachine vm) {
+                    double w = 0;
+                    if (cpuOverloaded) {
+                        w += (double) vm.getCPUDemand() / Math.max(1, n.getCPUCapacity());
+                    }
+                    if (memOverloaded) {
+                        w += (double) vm.getMemoryDemand() / Math.max(1, n.getMemoryCapacity());
+                    }
+                    return w;
+                }
+            });
+            Iterator<VirtualMachine> ite = vms.iterator();
+            while (ite.hasNext() && (cpu > n.getCPUCapacity() || mem > n.getMemoryCapacity())) {
+                VirtualMachine vm = ite.next();
+                cpu -= vm.getCPUDemand();
+                mem -= vm.getMemoryDemand();
+                cfg.addWaiting(vm);
+            }
+        }
+        for (VJob v : jobs) {
+            for (PlacementConstraint c : v.getConstraints()) {
+                if (c.isSatisfied(cfg)) {
+                    continue;
+                }
+                for (VirtualMachine vm : c.getAllVirtualMachines()) {
+                    if (!cfg.isRunning(vm)) {
+                        continue;
+                    }
+                    boolean onNodes = c.getNodes().contains(cfg.getLocation(vm));
+                    //Only the misplaced VMs are evicted for a fence or a ban, all of them otherwise
+                    if ((c instanceof Fence && !onNodes) || (c instanceof Ban && onNodes)
+                            || !(c instanceof Fence || c instanceof Ban)) {
+                        cfg.addWaiting(vm);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute a configuration using a plan module.
+     *
+     * @param rp       the plan module to use
+     * @param onlines  the online nodes
+     * @param offlines the offline nodes
+     * @param jobs     the vjobs to consider
+     * @return the computed configuration or {@code null} if it has overloaded nodes
+     * @throws PlanException if the plan module failed
+     */
+    private static Configuration solve(Plan rp,
+                                       ManagedElementSet<Node> onlines,
+                                       ManagedElementSet<Node> offlines,
+                                       List<VJob> jobs) throws PlanException {
+        Configuration dst = destination(rp, onlines, offlines, jobs);
+        if (!Configurations.futureOverloadedNodes(dst).isEmpty()) {
             return null;
         }
+        return dst;
+    }
+
+    /**
+     * Compute the destination configuration of a plan module, whether it is viable or not.
+     */
+    private static Configuration destination(Plan rp,
+                                             ManagedElementSet<Node> onlines,
+                                             ManagedElementSet<Node> offlines,
+                                             List<VJob> jobs) throws PlanException {
+        ManagedElementSet<VirtualMachine> runnings = new SimpleManagedElementSet<VirtualMachine>();
+        Configuration cfg = makeSource(onlines, offlines, jobs, runnings);
+        ManagedElementSet<VirtualMachine> empty = new SimpleManagedElementSet<VirtualMachine>();
+        TimedReconfigurationPlan p = rp.compute(cfg, runnings, empty, empty, empty, cfg.getOnlines(), cfg.getOfflines(), jobs);
+        return p.getDestination();
     }
 }
@@ -0,0 +1,438 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.*;
+import entropy.vjob.*;
+
+import java.util.*;
+
+/**
+ * A solver-free heuristic to place VMs.
+ * The VMs are placed using a best-fit decreasing strategy on their CPU then memory demand.
+ * Fence, Ban, Lonely, Spread and Gather constraints are considered during the placement
+ * while the other constraints are ignored and must be checked once the placement is done.
+ * Gather constraints that share a VM are merged.
+ *
+ * @author Fabien Hermenier
+ */
+public final class GreedyPlacement {
+
+    private GreedyPlacement() {
+    }
+
+    /**
+     * Decreasing order on the CPU demand, then on the memory demand.
+     */
+    private static final Comparator<VirtualMachine> DECREASING_DEMAND = new Comparator<VirtualMachine>() {
+        @Override
+        public int compare(VirtualMachine vm1, VirtualMachine vm2) {
+            int d = vm2.getCPUDemand() - vm1.getCPUDemand();
+            if (d == 0) {
+                d = vm2.getMemoryDemand() - vm1.getMemoryDemand();
+            }
+            return d;
+        }
+    };
+
+    /**
+     * Place VMs to run on the online nodes of a configuration.
+     * The VMs that are already running on the configuration are left untouched
+     * but are considered to check the node capacity and the constraints.
+     *
+     * @param cfg  the configuration to alter
+     * @param vms  the VMs to place
+     * @param jobs the vjobs that contain the constraints to consider
+     * @return the VMs that were not placed. Their state is left unchanged.
+     */
+    public static ManagedElementSet<VirtualMachine> place(Configuration cfg, ManagedElementSet<VirtualMachine> vms, List<VJob> jobs) {
+        State s = new State(cfg, jobs);
+        List<VirtualMachine> sorted = new ArrayList<VirtualMachine>(vms);
+        Collections.sort(sorted, DECREASING_DEMAND);
+        for (VirtualMachine vm : sorted) {
+            s.toPlace(vm);
+        }
+        ManagedElementSet<VirtualMachine> unplaced = new SimpleManagedElementSet<VirtualMachine>();
+        for (VirtualMachine vm : sorted) {
+            int n = s.select(vm);
+            if (n < 0) {
+                unplaced.add(vm);
+            } else {
+                cfg.setRunOn(vm, s.nodes.get(n));
+                s.commit(vm, n, true);
+            }
+        }
+        return unplaced;
+    }
+
+    /**
+     * Check if a configuration is viable: no nodes will be overloaded
+     * and all the placement constraints are satisfied.
+     *
+     * @param cfg  the configuration to check
+     * @param jobs the vjobs to check
+     * @return {@code true} iff the configuration is viable
+     */
+    public static boolean isViable(Configuration cfg, List<VJob> jobs) {
+        if (!Configurations.futureOverloadedNodes(cfg).isEmpty()) {
+            return false;
+        }
+        for (VJob v : jobs) {
+            for (PlacementConstraint c : v.getConstraints()) {
+                if (!c.isSatisfied(cfg)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The state of the nodes and the constraints during the placement.
+     */
+    private static final class State {
+
+        /**
+         * Group of a node hosting VMs that are not isolated.
+         */
+        private static final int SHARED = -1;
+
+        /**
+         * Group of an empty node.
+         */
+        private static final int UNSET = -2;
+
+        private List<Node> nodes;
+
+        private Map<Node, Integer> nodeIdx;
+
+        private int[] freeCPU;
+
+        private int[] freeMem;
+
+        /**
+         * The nodes, indexed by free CPU then by free memory, to retrieve the best-fit candidates first.
+         */
+        private TreeMap<Integer, TreeMap<Integer, Set<Integer>>> byFree;
+
+        /**
+         * For each node, the lonely group its VMs belong to.
+         */
+        private int[] groups;
+
+        /**
+         * For each node, the spread constraints of its VMs.
+         */
+        private List<Set<Integer>> spreads;
+
+        /**
+         * For each gather constraint, the hosting node.
+         */
+        private int[] gatherNodes;
+
+        /**
+         * For each gather constraint, the CPU and memory demand of the VMs not placed yet.
+         */
+        private int[][] gatherDemand;
+
+        private Map<VirtualMachine, Restrictions> restrictions;
+
+        private State(Configuration cfg, List<VJob> jobs) {
+            nodes = new ArrayList<Node>(cfg.getOnlines());
+            nodeIdx = new HashMap<Node, Integer>(nodes.size());
+            freeCPU = new int[nodes.size()];
+            freeMem = new int[nodes.size()];
+            groups = new int[nodes.size()];
+            spreads = new ArrayList<Set<Integer>>(nodes.size());
+            byFree = new TreeMap<Integer, TreeMap<Integer, Set<Integer>>>();
+            for (int i = 0; i < nodes.size(); i++) {
+                Node n = nodes.get(i);
+                nodeIdx.put(n, i);
+                freeCPU[i] = n.getCPUCapacity();
+                freeMem[i] = n.getMemoryCapacity();
+                groups[i] = UNSET;
+                spreads.add(null);
+                index(i);
+            }
+            restrictions = new HashMap<VirtualMachine, Restrictions>();
+            List<PlacementConstraint> lonelies = new ArrayList<PlacementConstraint>();
+            List<PlacementConstraint> gathers = new ArrayList<PlacementConstraint>();
+            int nbSpreads = 0;
+            for (VJob v : jobs) {
+                for (PlacementConstraint c : v.getConstraints()) {
+                    if (c instanceof Fence || c instanceof Ban) {
+                        boolean[] allowed = new boolean[nodes.size()];
+                        for (int i = 0; i < allowed.length; i++) {
+                            allowed[i] = c instanceof Ban;
+                        }
+                        for (Node n : c.getNodes()) {
+                            Integer i = nodeIdx.get(n);
+                            if (i != null) {
+                                allowed[i] = c instanceof Fence;
+                            }
+                        }
+                        for (VirtualMachine vm : c.getAllVirtualMachines()) {
+                            restrictionsOf(vm).restrict(allowed);
+                        }
+                    } else if (c instanceof Lonely) {
+                        lonelies.add(c);
+                    } else if (c instanceof Spread) {
+                        for (VirtualMachine vm : c.getAllVirtualMachines()) {
+                            restrictionsOf(vm).spreads.add(nbSpreads);
+                        }
+                        nbSpreads++;
+                    } else if (c instanceof Gather) {
+                        gathers.add(c);
+                    }
+                }
+            }
+            for (Map.Entry<VirtualMachine, Integer> e : ConstraintIndex.lonelyGroups(lonelies).entrySet()) {
+                restrictionsOf(e.getKey()).group = e.getValue();
+            }
+            int nbGathers = 0;
+            for (Map.Entry<VirtualMachine, Integer> e : gatherGroups(gathers).entrySet()) {
+                restrictionsOf(e.getKey()).gather = e.getValue();
+                nbGathers = Math.max(nbGathers, e.getValue() + 1);
+            }
+            gatherNodes = new int[nbGathers];
+            Arrays.fill(gatherNodes, -1);
+            gatherDemand = new int[nbGathers][2];
+
+            //The VMs already running
+            for (int i = 0; i < nodes.size(); i++) {
+                for (VirtualMachine vm : cfg.getRunnings(nodes.get(i))) {
+                    commit(vm, i, false);
+                }
+            }
+        }
+
+        /**
+         * Group the VMs involved in some {@link Gather} constraints.
+         * Two constraints that share a VM force all their VMs on a single node,
+         * so they are merged into one group.
+         *
+         * @param gathers the gather constraints
+         * @return for each VM involved in a gather constraint, its group. The groups are numbered from 0
+         */
+        private static Map<VirtualMachine, Integer> gatherGroups(List<PlacementConstraint> gathers) {
+            //Union-find over the constraints
+            int[] parent = new int[gathers.size()];
+            Map<VirtualMachine, Integer> first = new HashMap<VirtualMachine, Integer>();
+            for (int i = 0; i < gathers.size(); i++) {
+                parent[i] = i;
+                for (VirtualMachine vm : gathers.get(i).getAllVirtualMachines()) {
+                    Integer j = first.get(vm);
+                    if (j == null) {
+                        first.put(vm, i);
+                    } else {
+                        parent[root(parent, i)] = root(parent, j);
+                    }
+                }
+            }
+            Map<Integer, Integer> ids = new HashMap<Integer, Integer>();
+            Map<VirtualMachine, Integer> groups = new HashMap<VirtualMachine, Integer>(first.size() * 4 / 3 + 1);
+            for (Map.Entry<VirtualMachine, Integer> e : first.entrySet()) {
+                int r = root(parent, e.getValue());
+                Integer g = ids.get(r);
+                if (g == null) {
+                    g = ids.size();
+                    ids.put(r, g);
+                }
+                groups.put(e.getKey(), g);
+            }
+            return groups;
+        }
+
+        private static int root(int[] parent, int i) {
+            while (parent[i] != i) {
+                parent[i] = parent[parent[i]];
+                i = parent[i];
+            }
+            return i;
+        }
+
+        private Restrictions restrictionsOf(VirtualMachine vm) {
+            Restrictions r = restrictions.get(vm);
+            if (r == null) {
+                r = new Restrictions();
+                restrictions.put(vm, r);
+            }
+            return r;
+        }
+
+        /**
+         * Declare a VM as to be placed.
+         *
+         * @param vm the VM
+         */
+        private void toPlace(VirtualMachine vm) {
+            Restrictions r = restrictions.get(vm);
+            if (r != null && r.gather >= 0) {
+                gatherDemand[r.gather][0] += vm.getCPUDemand();
+                gatherDemand[r.gather][1] += vm.getMemoryDemand();
+            }
+        }
+
+        /**
+         * Select the node to host a VM.
+         *
+         * @param vm the VM to place
+         * @return the index of the node, {@code -1} if no node can host the VM
+         */
+        private int select(VirtualMachine vm) {
+            Restrictions r = restrictions.get(vm);
+            int cpu = vm.getCPUDemand();
+            int mem = vm.getMemoryDemand();
+            int group = SHARED;
+            if (r != null) {
+                group = r.group;
+                if (r.gather >= 0) {
+                    if (gatherNodes[r.gather] >= 0) {
+                        int n = gatherNodes[r.gather];
+                        return accept(r, group, n, cpu, mem) ? n : -1;
+                    }
+                    //Room for all the VMs of the group
+                    cpu = gatherDemand[r.gather][0];
+                    mem = gatherDemand[r.gather][1];
+                }
+            }
+            //Best-fit: the first acceptable node, starting from the least free ones that are large enough
+            for (TreeMap<Integer, Set<Integer>> byMem : byFree.tailMap(cpu, true).values()) {
+                for (Set<Integer> ns : byMem.tailMap(mem, true).values()) {
+                    for (Integer i : ns) {
+                        if (accept(r, group, i, cpu, mem)) {
+                            return i;
+                        }
+                    }
+                }
+            }
+            return -1;
+        }
+
+        private void index(int n) {
+            TreeMap<Integer, Set<Integer>> byMem = byFree.get(freeCPU[n]);
+            if (byMem == null) {
+                byMem = new TreeMap<Integer, Set<Integer>>();
+                byFree.put(freeCPU[n], byMem);
+            }
+            Set<Integer> ns = byMem.get(freeMem[n]);
+            if (ns == null) {
+                ns = new TreeSet<Integer>();
+                byMem.put(freeMem[n], ns);
+            }
+            ns.add(n);
+        }
+
+        private void unindex(int n) {
+            TreeMap<Integer, Set<Integer>> byMem = byFree.get(freeCPU[n]);
+            Set<Integer> ns = byMem.get(freeMem[n]);
+            ns.remove(n);
+            if (ns.isEmpty()) {
+                byMem.remove(freeMem[n]);
+                if (byMem.isEmpty()) {
+                    byFree.remove(freeCPU[n]);
+                }
+            }
+        }
+
+        private boolean accept(Restrictions r, int group, int n, int cpu, int mem) {
+            if (freeCPU[n] < cpu || freeMem[n] < mem) {
+                return false;
+            }
+            if (groups[n] != UNSET && groups[n] != group) {
+                return false;
+            }
+            if (r != null) {
+                if (r.allowed != null && !r.allowed[n]) {
+                    return false;
+                }
+                Set<Integer> onNode = spreads.get(n);
+                if (onNode != null) {
+                    for (Integer sp : r.spreads) {
+                        if (onNode.contains(sp)) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Update the state once a VM is running on a node.
+         *
+         * @param vm     the VM
+         * @param n      the index of the hosting node
+         * @param placed {@code true} if the VM was declared as to be placed
+         */
+        private void commit(VirtualMachine vm, int n, boolean placed) {
+            unindex(n);
+            freeCPU[n] -= vm.getCPUDemand();
+            freeMem[n] -= vm.getMemoryDemand();
+            index(n);
+            Restrictions r = restrictions.get(vm);
+            if (r == null) {
+                groups[n] = SHARED;
+                return;
+            }
+            groups[n] = r.group;
+            if (!r.spreads.isEmpty()) {
+                if (spreads.get(n) == null) {
+                    spreads.set(n, new HashSet<Integer>());
+                }
+                spreads.get(n).addAll(r.spreads);
+            }
+            if (r.gather >= 0) {
+                gatherNodes[r.gather] = n;
+            }
+            if (r.gather >= 0 && placed) {
+                gatherDemand[r.gather][0] -= vm.getCPUDemand();
+                gatherDemand[r.gather][1] -= vm.getMemoryDemand();
+            }
+        }
+    }
+
+    /**
+     * The restrictions that apply on a VM.
+     */
+    private static final class Restrictions {
+
+        /**
+         * The nodes that can host the VM. {@code null} for all.
+         */
+        private boolean[] allowed;
+
+        private int group = State.SHARED;
+
+        private List<Integer> spreads = new ArrayList<Integer>(1);
+
+        private int gather = -1;
+
+        private void restrict(boolean[] domain) {
+            if (allowed == null) {
+                allowed = domain.clone();
+            } else {
+                for (int i = 0; i < allowed.length; i++) {
+                    allowed[i] &= domain[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.Node;
+import entropy.configuration.SimpleConfiguration;
+import entropy.configuration.VirtualMachine;
+import entropy.vjob.DefaultVJob;
+import entropy.vjob.PlacementConstraint;
+import entropy.vjob.VJob;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A generated instance: a configuration and the vjobs it has been generated for.
+ *
+ * @author Fabien Hermenier
+ */
+public class Instance {
+
+    private Configuration cfg;
+
+    private List<VJob> vjobs;
+
+    private int index;
+
+    /**
+     * Make a new instance that is not related to any specification.
+     *
+     * @param cfg   the configuration
+     * @param vjobs the vjobs
+     */
+    public Instance(Configuration cfg, List<VJob> vjobs) {
+        this(-1, cfg, vjobs);
+    }
+
+    /**
+     * Make a new instance.
+     *
+     * @param index the index of the specification the instance has been generated for. {@code -1} if unknown
+     * @param cfg   the configuration
+     * @param vjobs the vjobs
+     */
+    public Instance(int index, Configuration cfg, List<VJob> vjobs) {
+        this.index = index;
+        this.cfg = cfg;
+        this.vjobs = vjobs;
+    }
+
+    /**
+     * Get the index of the specification the instance has been generated for.
+     *
+     * @return the index, {@code -1} if unknown
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Get the configuration.
+     *
+     * @return the configuration
+     */
+    public Configuration getConfiguration() {
+        return cfg;
+    }
+
+    /**
+     * Get the vjobs.
+     *
+     * @return a list of vjobs
+     */
+    public List<VJob> getVJobs() {
+        return vjobs;
+    }
+
+    /**
+     * Make a deep copy of the instance.
+     * The VMs and the constraints are copied so the copy can be altered
+     * independently while the nodes are shared.
+     *
+     * @return the copy
+     * @throws UnsupportedOperationException if a constraint cannot be copied
+     */
+    public Instance copy() {
+        Map<VirtualMachine, VirtualMachine> clones = new HashMap<VirtualMachine, VirtualMachine>();
+        Configuration c = new SimpleConfiguration();
+        for (Node n : cfg.getOnlines()) {
+            c.addOnline(n);
+            for (VirtualMachine vm : cfg.getRunnings(n)) {
+                c.setRunOn(clone(clones, vm), n);
+            }
+            for (VirtualMachine vm : cfg.getSleepings(n)) {
+                c.setSleepOn(clone(clones, vm), n);
+            }
+        }
+        for (Node n : cfg.getOfflines()) {
+            c.addOffline(n);
+        }
+        for (VirtualMachine vm : cfg.getWaitings()) {
+            c.addWaiting(clone(clones, vm));
+        }
+        List<VJob> vs = new ArrayList<VJob>(vjobs.size());
+        for (VJob v : vjobs) {
+            VJob cpy = new DefaultVJob(v.id());
+            for (VirtualMachine vm : v.getVirtualMachines()) {
+                cpy.addVirtualMachine(clone(clones, vm));
+            }
+            for (PlacementConstraint pc : v.getConstraints()) {
+                for (VirtualMachine vm : pc.getAllVirtualMachines()) {
+                    clone(clones, vm);
+                }
+                cpy.addConstraint(Constraints.copy(pc, clones));
+            }
+            vs.add(cpy);
+        }
+        return new Instance(index, c, vs);
+    }
+
+    private static VirtualMachine clone(Map<VirtualMachine, VirtualMachine> clones, VirtualMachine vm) {
+        VirtualMachine cpy = clones.get(vm);
+        if (cpy == null) {
+            cpy = vm.clone();
+            clones.put(vm, cpy);
+        }
+        return cpy;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.*;
+import entropy.vjob.DefaultVJob;
+import entropy.vjob.VJob;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A reader for the instances written by an {@link InstanceWriter}.
+ * The instances are read one at a time.
+ *
+ * @author Fabien Hermenier
+ */
+public class InstanceReader implements Closeable {
+
+    private BufferedReader in;
+
+    private int lineNumber;
+
+    /**
+     * Make a new reader.
+     *
+     * @param in         the stream to read
+     * @param compressed {@code true} if the stream has been compressed using GZIP
+     * @throws IOException if an error occurred while initializing the decompression
+     */
+    public InstanceReader(InputStream in, boolean compressed) throws IOException {
+        InputStream i = compressed ? new GZIPInputStream(in) : in;
+        this.in = new BufferedReader(new InputStreamReader(i, "UTF-8"));
+    }
+
+    /**
+     * Read the next instance.
+     *
+     * @return the instance or {@code null} if the end of the stream is reached
+     * @throws IOException if an error occurred while reading or if the stream is malformed
+     */
+    public Instance next() throws IOException {
+        String line = readLine();
+        if (line == null) {
+            return null;
+        }
+        try {
+            String[] header = line.split(" ");
+            if (!"instance".equals(header[0]) || header.length > 2) {
+                throw error("'instance' expected");
+            }
+            int index = header.length == 2 ? Integer.parseInt(header[1]) : -1;
+            Configuration cfg = new SimpleConfiguration();
+            ManagedElementSet<Node> nodes = new SimpleManagedElementSet<Node>();
+            ManagedElementSet<VirtualMachine> vms = new SimpleManagedElementSet<VirtualMachine>();
+            List<VJob> vjobs = new ArrayList<VJob>();
+            VJob current = null;
+            while (!"end".equals(line = readLine())) {
+                if (line == null) {
+                    throw error("'end' expected");
+                }
+                String[] toks = line.split(" ");
+                if ("node".equals(toks[0])) {
+                    Node n = new SimpleNode(toks[1], Integer.parseInt(toks[2]), Integer.parseInt(toks[3]), Integer.parseInt(toks[4]));
+                    nodes.add(n);
+                    if ("on".equals(toks[5])) {
+                        cfg.addOnline(n);
+                    } else {
+                        cfg.addOffline(n);
+                    }
+                } else if ("vm".equals(toks[0])) {
+                    VirtualMachine vm = new SimpleVirtualMachine(toks[1], Integer.parseInt(toks[2]), Integer.parseInt(toks[3]), Integer.parseInt(toks[6]));
+                    vm.setCPUDemand(Integer.parseInt(toks[4]));
+                    vm.setCPUMax(Integer.parseInt(toks[5]));
+                    vm.setMemoryDemand(Integer.parseInt(toks[7]));
+                    vms.add(vm);
+                    if ("run".equals(toks[8])) {
+                        cfg.setRunOn(vm, node(nodes, toks[9]));
+                    } else if ("sleep".equals(toks[8])) {
+                        cfg.setSleepOn(vm, node(nodes, toks[9]));
+                    } else {
+                        cfg.addWaiting(vm);
+                    }
+                } else if ("vjob".equals(toks[0])) {
+                    current = new DefaultVJob(toks[1]);
+                    vjobs.add(current);
+                } else if ("vjob-vm".equals(toks[0])) {
+                    vjob(current).addVirtualMachine(vm(vms, toks[1]));
+                } else if ("constraint".equals(toks[0])) {
+                    int nbVMs = Integer.parseInt(toks[2]);
+                    ManagedElementSet<VirtualMachine> cVMs = new SimpleManagedElementSet<VirtualMachine>();
+                    for (int i = 0; i < nbVMs; i++) {
+                        cVMs.add(vm(vms, toks[3 + i]));
+                    }
+                    int nbNodes = Integer.parseInt(toks[3 + nbVMs]);
+                    ManagedElementSet<Node> cNodes = new SimpleManagedElementSet<Node>();
+                    for (int i = 0; i < nbNodes; i++) {
+                        cNodes.add(node(nodes, toks[4 + nbVMs + i]));
+                    }
+                    vjob(current).addConstraint(Constraints.make(toks[1], cVMs, cNodes));
+                } else {
+                    throw error("Unknown statement '" + toks[0] + "'");
+                }
+            }
+            return new Instance(index, cfg, vjobs);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw malformed(line, e);
+        } catch (NumberFormatException e) {
+            throw malformed(line, e);
+        } catch (UnsupportedOperationException e) {
+            //Unknown constraint type
+            throw malformed(line, e);
+        }
+    }
+
+    private IOException malformed(String line, RuntimeException cause) {
+        IOException e = error("Malformed statement '" + line + "'");
+        e.initCause(cause);
+        return e;
+    }
+
+    private String readLine() throws IOException {
+        lineNumber++;
+        return in.readLine();
+    }
+
+    private Node node(ManagedElementSet<Node> nodes, String name) throws IOException {
+        Node n = nodes.get(name);
+        if (n == null) {
+            throw error("Unknown node '" + name + "'");
+        }
+        return n;
+    }
+
+    private VirtualMachine vm(ManagedElementSet<VirtualMachine> vms, String name) throws IOException {
+        VirtualMachine vm = vms.get(name);
+        if (vm == null) {
+            throw error("Unknown VM '" + name + "'");
+        }
+        return vm;
+    }
+
+    private VJob vjob(VJob current) throws IOException {
+        if (current == null) {
+            throw error("'vjob' expected");
+        }
+        return current;
+    }
+
+    private IOException error(String msg) {
+        return new IOException("Line " + lineNumber + ": " + msg);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
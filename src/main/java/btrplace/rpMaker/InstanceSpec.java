@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.ManagedElementSet;
+import entropy.configuration.Node;
+import entropy.vjob.VJob;
+
+import java.util.List;
+
+/**
+ * The specification of an instance to generate.
+ *
+ * @author Fabien Hermenier
+ */
+public class InstanceSpec {
+
+    private ManagedElementSet<Node> onlines;
+
+    private ManagedElementSet<Node> offlines;
+
+    private List<VJob> vjobs;
+
+    /**
+     * Make a new specification.
+     *
+     * @param onlines  all the online nodes that will compose the configuration
+     * @param offlines all the offline nodes that will compose the configuration
+     * @param vjobs    the list of vjobs to consider
+     */
+    public InstanceSpec(ManagedElementSet<Node> onlines, ManagedElementSet<Node> offlines, List<VJob> vjobs) {
+        this.onlines = onlines;
+        this.offlines = offlines;
+        this.vjobs = vjobs;
+    }
+
+    /**
+     * Get the online nodes.
+     *
+     * @return a set of nodes
+     */
+    public ManagedElementSet<Node> getOnlines() {
+        return onlines;
+    }
+
+    /**
+     * Get the offline nodes.
+     *
+     * @return a set of nodes
+     */
+    public ManagedElementSet<Node> getOfflines() {
+        return offlines;
+    }
+
+    /**
+     * Get the vjobs.
+     *
+     * @return a list of vjobs
+     */
+    public List<VJob> getVJobs() {
+        return vjobs;
+    }
+}
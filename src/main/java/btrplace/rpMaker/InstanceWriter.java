@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
+import entropy.vjob.PlacementConstraint;
+import entropy.vjob.VJob;
+
+import java.io.*;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A writer to stream instances in a text format.
+ * Each element is written as soon as it is visited so the memory usage does not depend
+ * on the size of the instances. A stream may contain several instances, see {@link InstanceReader}.
+ * The writer can be plugged into a batch generation to write each instance once generated.
+ * <p/>
+ * The format is line-oriented and the names must not contain any whitespace:
+ * <pre>
+ * instance [index]
+ * node name nbCPUs cpuCapacity memoryCapacity (on|off)
+ * vm name nbCPUs cpuConsumption cpuDemand cpuMax memoryConsumption memoryDemand (run host|sleep host|wait)
+ * vjob id
+ * vjob-vm name
+ * constraint type nbVMs vm... nbNodes node...
+ * end
+ * </pre>
+ * The index is the one of the specification the instance has been generated for, if known.
+ * The templates and the options of the VMs are not written.
+ *
+ * @author Fabien Hermenier
+ */
+public class InstanceWriter implements GenerationListener, Closeable, Flushable {
+
+    private Writer out;
+
+    /**
+     * Make a new writer.
+     *
+     * @param out      the stream to write to
+     * @param compress {@code true} to compress the stream using GZIP
+     * @throws IOException if an error occurred while initializing the compression
+     */
+    public InstanceWriter(OutputStream out, boolean compress) throws IOException {
+        OutputStream o = compress ? new GZIPOutputStream(out) : out;
+        this.out = new BufferedWriter(new OutputStreamWriter(o, "UTF-8"));
+    }
+
+    /**
+     * Write an instance that is not related to any specification.
+     *
+     * @param cfg   the configuration
+     * @param vjobs the vjobs
+     * @throws IOException              if an error occurred while writing
+     * @throws IllegalArgumentException if the instance cannot be written. Nothing is written then
+     */
+    public void write(Configuration cfg, List<VJob> vjobs) throws IOException {
+        write(-1, cfg, vjobs);
+    }
+
+    /**
+     * Write an instance.
+     *
+     * @param index the index of the specification the instance has been generated for. {@code -1} if unknown
+     * @param cfg   the configuration
+     * @param vjobs the vjobs
+     * @throws IOException              if an error occurred while writing
+     * @throws IllegalArgumentException if a vjob refers to an element out of the configuration,
+     *                                  uses an unsupported constraint, or if the name of a node,
+     *                                  a VM or a vjob is empty or has a whitespace. Nothing is written then
+     */
+    public void write(int index, Configuration cfg, List<VJob> vjobs) throws IOException {
+        check(cfg, vjobs);
+        out.write("instance");
+        if (index >= 0) {
+            out.write(' ');
+            out.write(Integer.toString(index));
+        }
+        out.write('\n');
+        for (Node n : cfg.getOnlines()) {
+            writeNode(n, "on");
+        }
+        for (Node n : cfg.getOfflines()) {
+            writeNode(n, "off");
+        }
+        for (Node n : cfg.getOnlines()) {
+            for (VirtualMachine vm : cfg.getRunnings(n)) {
+                writeVM(vm, "run ".concat(n.getName()));
+            }
+            for (VirtualMachine vm : cfg.getSleepings(n)) {
+                writeVM(vm, "sleep ".concat(n.getName()));
+            }
+        }
+        for (VirtualMachine vm : cfg.getWaitings()) {
+            writeVM(vm, "wait");
+        }
+        for (VJob v : vjobs) {
+            out.write("vjob ");
+            out.write(v.id());
+            out.write('\n');
+            for (VirtualMachine vm : v.getVirtualMachines()) {
+                out.write("vjob-vm ");
+                out.write(vm.getName());
+                out.write('\n');
+            }
+            for (PlacementConstraint c : v.getConstraints()) {
+                out.write("constraint ");
+                out.write(Constraints.getType(c));
+                out.write(' ');
+                out.write(Integer.toString(c.getAllVirtualMachines().size()));
+                for (VirtualMachine vm : c.getAllVirtualMachines()) {
+                    out.write(' ');
+                    out.write(vm.getName());
+                }
+                out.write(' ');
+                out.write(Integer.toString(c.getNodes().size()));
+                for (Node n : c.getNodes()) {
+                    out.write(' ');
+                    out.write(n.getName());
+                }
+                out.write('\n');
+            }
+        }
+        out.write("end\n");
+    }
+
+    /**
+     * Write an instance.
+     *
+     * @param i the instance
+     * @throws IOException              if an error occurred while writing
+     * @throws IllegalArgumentException if the instance cannot be written. Nothing is written then
+     */
+    public void write(Instance i) throws IOException {
+        write(i.getIndex(), i.getConfiguration(), i.getVJobs());
+    }
+
+    private static void check(Configuration cfg, List<VJob> vjobs) {
+        //The names are separated by spaces in the format
+        for (Node n : cfg.getOnlines()) {
+            checkName("Node", n.getName());
+        }
+        for (Node n : cfg.getOfflines()) {
+            checkName("Node", n.getName());
+        }
+        for (VirtualMachine vm : cfg.getAllVirtualMachines()) {
+            checkName("VM", vm.getName());
+        }
+        for (VJob v : vjobs) {
+            checkName("VJob", v.id());
+            for (VirtualMachine vm : v.getVirtualMachines()) {
+                check(cfg, vm);
+            }
+            for (PlacementConstraint c : v.getConstraints()) {
+                if (!Constraints.isSupported(c)) {
+                    throw new IllegalArgumentException("Unsupported constraint type '" + c.getClass().getSimpleName() + "'");
+                }
+                for (VirtualMachine vm : c.getAllVirtualMachines()) {
+                    check(cfg, vm);
+                }
+                for (Node n : c.getNodes()) {
+                    if (!cfg.isOnline(n) && !cfg.isOffline(n)) {
+                        throw new IllegalArgumentException("Node '" + n.getName() + "' is not in the configuration");
+                    }
+                }
+            }
+        }
+    }
+
+    private static void checkName(String kind, String name) {
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException(kind + " with an empty name");
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.isWhitespace(name.charAt(i))) {
+                throw new IllegalArgumentException(kind + " '" + name + "' has a whitespace in its name");
+            }
+        }
+    }
+
+    private static void check(Configuration cfg, VirtualMachine vm) {
+        if (!cfg.isRunning(vm) && !cfg.isSleeping(vm) && !cfg.isWaiting(vm)) {
+            throw new IllegalArgumentException("VM '" + vm.getName() + "' is not in the configuration");
+        }
+    }
+
+    private void writeNode(Node n, String state) throws IOException {
+        out.write("node ");
+        out.write(n.getName());
+        out.write(' ');
+        out.write(Integer.toString(n.getNbOfCPUs()));
+        out.write(' ');
+        out.write(Integer.toString(n.getCPUCapacity()));
+        out.write(' ');
+        out.write(Integer.toString(n.getMemoryCapacity()));
+        out.write(' ');
+        out.write(state);
+        out.write('\n');
+    }
+
+    private void writeVM(VirtualMachine vm, String state) throws IOException {
+        out.write("vm ");
+        out.write(vm.getName());
+        out.write(' ');
+        out.write(Integer.toString(vm.getNbOfCPUs()));
+        out.write(' ');
+        out.write(Integer.toString(vm.getCPUConsumption()));
+        out.write(' ');
+        out.write(Integer.toString(vm.getCPUDemand()));
+        out.write(' ');
+        out.write(Integer.toString(vm.getCPUMax()));
+        out.write(' ');
+        out.write(Integer.toString(vm.getMemoryConsumption()));
+        out.write(' ');
+        out.write(Integer.toString(vm.getMemoryDemand()));
+        out.write(' ');
+        out.write(state);
+        out.write('\n');
+    }
+
+    /**
+     * Write the configuration of a successful generation along with the index of its specification.
+     * The failed generations are ignored so the missing indexes denote them.
+     *
+     * @param res the result of the generation
+     * @throws IllegalStateException if an error occurred while writing
+     */
+    @Override
+    public void generated(GenerationResult res) {
+        if (res.isSuccessful()) {
+            try {
+                write(res.getIndex(), res.getConfiguration(), res.getSpec().getVJobs());
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to write instance " + res.getIndex(), e);
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.ManagedElementSet;
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Statistics about the load of a configuration.
+ * The report is computed in a single pass over the nodes and the VMs.
+ * The global loads consider all the VMs while the per-node statistics
+ * only consider the running VMs of each online node.
+ *
+ * @author Fabien Hermenier
+ */
+public class LoadReport {
+
+    /**
+     * The resources covered by the report.
+     */
+    public static enum Resource {
+        cpuConsumption, cpuDemand, memoryConsumption, memoryDemand
+    }
+
+    /**
+     * The number of buckets in a histogram. Each bucket covers a 10% range of utilisation
+     * while the last bucket counts the nodes with an utilisation exceeding 100%.
+     */
+    public static final int NB_BUCKETS = 11;
+
+    /**
+     * The number of online nodes from which the report is computed in parallel.
+     */
+    static final int PARALLEL_THRESHOLD = 10000;
+
+    private static final int NB_RESOURCES = Resource.values().length;
+
+    private long cpuCapacity;
+
+    private long memoryCapacity;
+
+    private long[] used;
+
+    /**
+     * The sorted utilisation ratio of the nodes, per resource.
+     */
+    private double[][] utilisation;
+
+    private int[][] histograms;
+
+    private int nbCurrentlyOverloaded;
+
+    private int nbFutureOverloaded;
+
+    /**
+     * Make a report.
+     *
+     * @param cfg the configuration to analyse
+     */
+    LoadReport(Configuration cfg) {
+        final ManagedElementSet<Node> ns = cfg.getOnlines();
+        used = new long[NB_RESOURCES];
+        utilisation = new double[NB_RESOURCES][ns.size()];
+        histograms = new int[NB_RESOURCES][NB_BUCKETS];
+        int nbChunks = ns.size() < PARALLEL_THRESHOLD ? 1 : Workers.defaultSize();
+        List<Chunk> chunks = new ArrayList<Chunk>(nbChunks);
+        int chunkSize = Math.max(1, (ns.size() + nbChunks - 1) / nbChunks);
+        for (int from = 0; from < ns.size(); from += chunkSize) {
+            chunks.add(new Chunk(cfg, ns, from, Math.min(ns.size(), from + chunkSize)));
+        }
+        if (chunks.size() <= 1) {
+            for (Chunk c : chunks) {
+                c.call();
+            }
+        } else {
+            Workers.invokeAll(chunks);
+        }
+        for (Chunk c : chunks) {
+            cpuCapacity += c.partCPUCapacity;
+            memoryCapacity += c.partMemoryCapacity;
+            nbCurrentlyOverloaded += c.partCurrentlyOverloaded;
+            nbFutureOverloaded += c.partFutureOverloaded;
+            for (int r = 0; r < NB_RESOURCES; r++) {
+                used[r] += c.partUsed[r];
+                for (int b = 0; b < NB_BUCKETS; b++) {
+                    histograms[r][b] += c.partHistograms[r][b];
+                }
+            }
+        }
+        //The VMs that are not hosted by an online node
+        for (VirtualMachine vm : cfg.getWaitings()) {
+            add(used, vm);
+        }
+        for (double[] u : utilisation) {
+            Arrays.sort(u);
+        }
+    }
+
+    private static void add(long[] sums, VirtualMachine vm) {
+        sums[Resource.cpuConsumption.ordinal()] += vm.getCPUConsumption();
+        sums[Resource.cpuDemand.ordinal()] += vm.getCPUDemand();
+        sums[Resource.memoryConsumption.ordinal()] += vm.getMemoryConsumption();
+        sums[Resource.memoryDemand.ordinal()] += vm.getMemoryDemand();
+    }
+
+    private static double ratio(long u, long capa) {
+        if (capa == 0) {
+            return u == 0 ? 0 : Double.POSITIVE_INFINITY;
+        }
+        return 1.0d * u / capa;
+    }
+
+    private static int bucket(double ratio) {
+        if (ratio > 1.0d) {
+            return NB_BUCKETS - 1;
+        }
+        return Math.min((int) (ratio * (NB_BUCKETS - 1)), NB_BUCKETS - 2);
+    }
+
+    private static boolean isCPU(int r) {
+        return r == Resource.cpuConsumption.ordinal() || r == Resource.cpuDemand.ordinal();
+    }
+
+    /**
+     * Get the global load of a resource.
+     *
+     * @param r the resource
+     * @return the ratio between the resource usage of all the VMs and the capacity of the online nodes
+     */
+    public double getLoad(Resource r) {
+        return ratio(used[r.ordinal()], isCPU(r.ordinal()) ? cpuCapacity : memoryCapacity);
+    }
+
+    /**
+     * Get the histogram of the node utilisation for a resource.
+     *
+     * @param r the resource
+     * @return an array of {@link #NB_BUCKETS} values. The value at index {@code i < 10} is the number
+     *         of nodes having an utilisation between {@code i * 10%} and {@code (i + 1) * 10%}. The last value
+     *         is the number of nodes having an utilisation exceeding 100%
+     */
+    public int[] getHistogram(Resource r) {
+        return histograms[r.ordinal()].clone();
+    }
+
+    /**
+     * Get a percentile of the node utilisation for a resource.
+     * The nearest-rank method is used.
+     *
+     * @param r the resource
+     * @param p the percentile. Between 0.0 and 1.0
+     * @return the utilisation ratio. {@code 0} if there is no online node
+     */
+    public double getPercentile(Resource r, double p) {
+        double[] u = utilisation[r.ordinal()];
+        if (u.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p * u.length) - 1;
+        return u[Math.max(0, Math.min(rank, u.length - 1))];
+    }
+
+    /**
+     * Get the number of online nodes that are currently overloaded,
+     * considering the CPU and the memory consumption of their running VMs.
+     *
+     * @return a positive number
+     */
+    public int getNbCurrentlyOverloadedNodes() {
+        return nbCurrentlyOverloaded;
+    }
+
+    /**
+     * Get the number of online nodes that will be overloaded,
+     * considering the CPU and the memory demand of their running VMs.
+     *
+     * @return a positive number
+     */
+    public int getNbFutureOverloadedNodes() {
+        return nbFutureOverloaded;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        for (Resource r : Resource.values()) {
+            b.append(r).append(": load=").append(getLoad(r))
+                    .append(" p50=").append(getPercentile(r, 0.5))
+                    .append(" p90=").append(getPercentile(r, 0.9))
+                    .append(" p99=").append(getPercentile(r, 0.99))
+                    .append(" histogram=").append(Arrays.toString(histograms[r.ordinal()]))
+                    .append('\n');
+        }
+        b.append("currently overloaded nodes: ").append(nbCurrentlyOverloaded).append('\n');
+        b.append("future overloaded nodes: ").append(nbFutureOverloaded);
+        return b.toString();
+    }
+
+    /**
+     * The statistics of a range of online nodes.
+     */
+    private class Chunk implements Callable<Chunk> {
+
+        private Configuration cfg;
+
+        private ManagedElementSet<Node> ns;
+
+        private int from;
+
+        private int to;
+
+        private long partCPUCapacity;
+
+        private long partMemoryCapacity;
+
+        private long[] partUsed = new long[NB_RESOURCES];
+
+        private int[][] partHistograms = new int[NB_RESOURCES][NB_BUCKETS];
+
+        private int partCurrentlyOverloaded;
+
+        private int partFutureOverloaded;
+
+        private Chunk(Configuration cfg, ManagedElementSet<Node> ns, int from, int to) {
+            this.cfg = cfg;
+            this.ns = ns;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Chunk call() {
+            long[] onNode = new long[NB_RESOURCES];
+            for (int i = from; i < to; i++) {
+                Node n = ns.get(i);
+                Arrays.fill(onNode, 0);
+                for (VirtualMachine vm : cfg.getRunnings(n)) {
+                    add(onNode, vm);
+                }
+                for (int r = 0; r < NB_RESOURCES; r++) {
+                    partUsed[r] += onNode[r];
+                    double u = ratio(onNode[r], isCPU(r) ? n.getCPUCapacity() : n.getMemoryCapacity());
+                    //Each chunk fills its own range of the shared arrays
+                    utilisation[r][i] = u;
+                    partHistograms[r][bucket(u)]++;
+                }
+                for (VirtualMachine vm : cfg.getSleepings(n)) {
+                    add(partUsed, vm);
+                }
+                if (onNode[Resource.cpuConsumption.ordinal()] > n.getCPUCapacity()
+                        || onNode[Resource.memoryConsumption.ordinal()] > n.getMemoryCapacity()) {
+                    partCurrentlyOverloaded++;
+                }
+                if (onNode[Resource.cpuDemand.ordinal()] > n.getCPUCapacity()
+                        || onNode[Resource.memoryDemand.ordinal()] > n.getMemoryCapacity()) {
+                    partFutureOverloaded++;
+                }
+                partCPUCapacity += n.getCPUCapacity();
+                partMemoryCapacity += n.getMemoryCapacity();
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.ManagedElementSet;
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
+import entropy.vjob.VJob;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Maintain the load of a configuration in constant time.
+ * The tracker keeps the total capacity of the online nodes and the total resource usage of the VMs.
+ * To stay up to date, the configuration must be altered through the tracker.
+ * Moving a VM that is already in the configuration does not change the totals.
+ * <p/>
+ * The totals are computed from the resource usage of the VMs when they enter the tracker.
+ * Changing the consumption or the demand of a tracked VM directly, or using
+ * the {@link VJobAlterer} methods that do not take the tracker, invalidates the tracker.
+ * Use the tracker-aware alterations instead.
+ *
+ * @author Fabien Hermenier
+ * @see ConfigurationAlterer#applyNodeFailureRatio(LoadTracker, double)
+ * @see VJobAlterer#setCPUDemandRatio(LoadTracker, java.util.List, double)
+ */
+public class LoadTracker implements PlacementView {
+
+    private Configuration cfg;
+
+    private long cpuCapacity;
+
+    private long memoryCapacity;
+
+    private long cpuConsumption;
+
+    private long cpuDemand;
+
+    private long memoryConsumption;
+
+    /**
+     * Attach a tracker to a configuration.
+     *
+     * @param cfg the configuration to track
+     */
+    public LoadTracker(Configuration cfg) {
+        this.cfg = cfg;
+        for (Node n : cfg.getOnlines()) {
+            cpuCapacity += n.getCPUCapacity();
+            memoryCapacity += n.getMemoryCapacity();
+        }
+        for (VirtualMachine vm : cfg.getAllVirtualMachines()) {
+            account(vm, 1);
+        }
+    }
+
+    private void account(VirtualMachine vm, int sign) {
+        cpuConsumption += sign * vm.getCPUConsumption();
+        cpuDemand += sign * vm.getCPUDemand();
+        memoryConsumption += sign * vm.getMemoryConsumption();
+    }
+
+    /**
+     * Withdraw the VMs of some vjobs from the totals before their resource usage changes.
+     * They must be accounted again using {@link #track(Set)} once the change is done.
+     *
+     * @param vjobs the vjobs
+     * @return the VMs of the vjobs that are in the configuration
+     */
+    Set<VirtualMachine> untrack(List<VJob> vjobs) {
+        Set<VirtualMachine> vms = new HashSet<VirtualMachine>();
+        for (VJob v : vjobs) {
+            for (VirtualMachine vm : v.getVirtualMachines()) {
+                if (contains(vm) && vms.add(vm)) {
+                    account(vm, -1);
+                }
+            }
+        }
+        return vms;
+    }
+
+    /**
+     * Account again VMs that were withdrawn using {@link #untrack(List)}.
+     *
+     * @param vms the VMs
+     */
+    void track(Set<VirtualMachine> vms) {
+        for (VirtualMachine vm : vms) {
+            account(vm, 1);
+        }
+    }
+
+    private boolean contains(VirtualMachine vm) {
+        return cfg.isRunning(vm) || cfg.isSleeping(vm) || cfg.isWaiting(vm);
+    }
+
+    /**
+     * Get the tracked configuration.
+     *
+     * @return the configuration
+     */
+    public Configuration getConfiguration() {
+        return cfg;
+    }
+
+    /**
+     * Check if a VM is running in the tracked configuration.
+     *
+     * @param vm the VM
+     * @return {@code true} iff the VM is running
+     */
+    @Override
+    public boolean isRunning(VirtualMachine vm) {
+        return cfg.isRunning(vm);
+    }
+
+    /**
+     * Get the node hosting a VM in the tracked configuration.
+     *
+     * @param vm the VM
+     * @return the node. {@code null} if the VM is neither running nor sleeping
+     */
+    @Override
+    public Node getLocation(VirtualMachine vm) {
+        return cfg.getLocation(vm);
+    }
+
+    /**
+     * Get the VMs running on a node of the tracked configuration.
+     *
+     * @param n the node
+     * @return the VMs
+     */
+    @Override
+    public Iterable<VirtualMachine> getRunnings(Node n) {
+        return cfg.getRunnings(n);
+    }
+
+    /**
+     * Get the VMs sleeping on a node of the tracked configuration.
+     *
+     * @param n the node
+     * @return the VMs
+     */
+    @Override
+    public Iterable<VirtualMachine> getSleepings(Node n) {
+        return cfg.getSleepings(n);
+    }
+
+    /**
+     * Get the online nodes of the tracked configuration.
+     *
+     * @return the nodes. The set must not be modified
+     */
+    @Override
+    public ManagedElementSet<Node> getOnlines() {
+        return cfg.getOnlines();
+    }
+
+    /**
+     * Set a VM running on a node.
+     *
+     * @param vm the VM
+     * @param n  the hosting node
+     * @return the result of {@link Configuration#setRunOn(VirtualMachine, Node)}
+     */
+    @Override
+    public boolean setRunOn(VirtualMachine vm, Node n) {
+        boolean known = contains(vm);
+        boolean ret = cfg.setRunOn(vm, n);
+        if (!known && contains(vm)) {
+            account(vm, 1);
+        }
+        return ret;
+    }
+
+    /**
+     * Remove a VM from the configuration.
+     *
+     * @param vm the VM to remove
+     * @return {@code true} if the VM was removed
+     */
+    @Override
+    public boolean remove(VirtualMachine vm) {
+        boolean ret = cfg.remove(vm);
+        if (ret) {
+            account(vm, -1);
+        }
+        return ret;
+    }
+
+    /**
+     * Set a node offline.
+     *
+     * @param n the node
+     * @return the result of {@link Configuration#addOffline(Node)}
+     */
+    @Override
+    public boolean addOffline(Node n) {
+        boolean wasOnline = cfg.isOnline(n);
+        boolean ret = cfg.addOffline(n);
+        if (wasOnline && cfg.isOffline(n)) {
+            cpuCapacity -= n.getCPUCapacity();
+            memoryCapacity -= n.getMemoryCapacity();
+        }
+        return ret;
+    }
+
+    /**
+     * Set a node online.
+     *
+     * @param n the node
+     * @return the result of {@link Configuration#addOnline(Node)}
+     */
+    public boolean addOnline(Node n) {
+        boolean wasOnline = cfg.isOnline(n);
+        boolean ret = cfg.addOnline(n);
+        if (!wasOnline && cfg.isOnline(n)) {
+            cpuCapacity += n.getCPUCapacity();
+            memoryCapacity += n.getMemoryCapacity();
+        }
+        return ret;
+    }
+
+    /**
+     * Get the CPU consumption load.
+     *
+     * @return the ratio between the CPU consumption of all the VMs and the CPU capacity of the online nodes
+     * @see ConfigurationAlterer#getCPUConsumptionLoad(Configuration)
+     */
+    public double getCPUConsumptionLoad() {
+        return 1.0d * cpuConsumption / cpuCapacity;
+    }
+
+    /**
+     * Get the CPU demand load.
+     *
+     * @return the ratio between the CPU demand of all the VMs and the CPU capacity of the online nodes
+     * @see ConfigurationAlterer#getCPUDemandLoad(Configuration)
+     */
+    public double getCPUDemandLoad() {
+        return 1.0d * cpuDemand / cpuCapacity;
+    }
+
+    /**
+     * Get the memory consumption load.
+     *
+     * @return the ratio between the memory consumption of all the VMs and the memory capacity of the online nodes
+     * @see ConfigurationAlterer#getMemoryConsumptionLoad(Configuration)
+     */
+    public double getMemoryConsumptionLoad() {
+        return 1.0d * memoryConsumption / memoryCapacity;
+    }
+}
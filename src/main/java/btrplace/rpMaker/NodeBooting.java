@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.Node;
+
+/**
+ * A relaxation that brings offline nodes online.
+ *
+ * @author Fabien Hermenier
+ */
+public class NodeBooting implements Relaxation {
+
+    private int nb;
+
+    /**
+     * Make a new relaxation.
+     *
+     * @param nb the maximum number of nodes to bring online at each relaxation
+     */
+    public NodeBooting(int nb) {
+        if (nb <= 0) {
+            throw new IllegalArgumentException("The number of nodes must be positive: " + nb);
+        }
+        this.nb = nb;
+    }
+
+    @Override
+    public boolean relax(Diagnosis d, InstanceSpec spec) {
+        int i = 0;
+        while (i < nb && !spec.getOfflines().isEmpty()) {
+            Node n = spec.getOfflines().get(spec.getOfflines().size() - 1);
+            spec.getOfflines().remove(n);
+            spec.getOnlines().add(n);
+            i++;
+        }
+        return i > 0;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.ManagedElementSet;
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
+
+/**
+ * A view of the placement of the VMs.
+ * It allows to alter and to check the moves of the VMs the same way on a {@link Configuration}
+ * and on a {@link ConfigurationFork}.
+ *
+ * @author Fabien Hermenier
+ * @see DeltaChecker
+ * @see ConfigurationView
+ */
+interface PlacementView {
+
+    /**
+     * Check if a VM is running.
+     *
+     * @param vm the VM
+     * @return {@code true} iff the VM is running
+     */
+    boolean isRunning(VirtualMachine vm);
+
+    /**
+     * Get the node hosting a VM.
+     *
+     * @param vm the VM
+     * @return the node. {@code null} if the VM is neither running nor sleeping
+     */
+    Node getLocation(VirtualMachine vm);
+
+    /**
+     * Get the VMs running on a node.
+     *
+     * @param n the node
+     * @return the VMs
+     */
+    Iterable<VirtualMachine> getRunnings(Node n);
+
+    /**
+     * Get the VMs sleeping on a node.
+     *
+     * @param n the node
+     * @return the VMs
+     */
+    Iterable<VirtualMachine> getSleepings(Node n);
+
+    /**
+     * Get the online nodes.
+     *
+     * @return the nodes. The set must not be modified
+     */
+    ManagedElementSet<Node> getOnlines();
+
+    /**
+     * Set a VM running on a node.
+     *
+     * @param vm the VM
+     * @param n  the hosting node
+     * @return {@code true} if the VM is now running on the node
+     */
+    boolean setRunOn(VirtualMachine vm, Node n);
+
+    /**
+     * Remove a VM.
+     *
+     * @param vm the VM to remove
+     * @return {@code true} if the VM was removed
+     */
+    boolean remove(VirtualMachine vm);
+
+    /**
+     * Set a node offline.
+     *
+     * @param n the node
+     * @return {@code true} if the node is now offline
+     */
+    boolean addOffline(Node n);
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.plan.Plan;
+
+/**
+ * A factory to create plan modules.
+ * As a plan module such as {@link entropy.plan.choco.ChocoCustomRP} is not thread-safe,
+ * each worker of a batch generation asks for its own module.
+ *
+ * @author Fabien Hermenier
+ */
+public interface PlanFactory {
+
+    /**
+     * Create a new plan module.
+     *
+     * @return a plan module that is not shared with any other worker
+     */
+    Plan build();
+}
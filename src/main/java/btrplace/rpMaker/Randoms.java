@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.ManagedElement;
+import entropy.configuration.ManagedElementSet;
+
+import java.util.Random;
+
+/**
+ * Tools to manage the random sources used by the alterers.
+ * To be reproducible, an experiment creates a root source from a seed
+ * and splits it into one independent source per worker.
+ * <p/>
+ * The sources are {@link Random} instances rather than {@code SplittableRandom} ones
+ * as the alterers rely on {@link java.util.Collections#shuffle(java.util.List, Random)}
+ * and on the public API of the generator, that both expect a {@link Random}.
+ *
+ * @author Fabien Hermenier
+ */
+public final class Randoms {
+
+    private static final ThreadLocal<Random> DEFAULT = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return new Random();
+        }
+    };
+
+    private Randoms() {
+    }
+
+    /**
+     * Get the default random source of the current thread.
+     * It is used by the alterers when no random source is given.
+     *
+     * @return a random source that is not shared with the other threads
+     */
+    public static Random current() {
+        return DEFAULT.get();
+    }
+
+    /**
+     * Derive a new random source from another one.
+     * The sequence of the derived sources only depends on the seed of the parent.
+     *
+     * @param parent the parent source
+     * @return a new random source
+     */
+    public static Random split(Random parent) {
+        return new Random(parent.nextLong());
+    }
+
+    /**
+     * Pick a random element.
+     *
+     * @param elems the elements to pick from. Must not be empty
+     * @param rnd   the random source
+     * @param <E>   the type of element
+     * @return an element of the set
+     */
+    public static <E extends ManagedElement> E pick(ManagedElementSet<E> elems, Random rnd) {
+        return elems.get(rnd.nextInt(elems.size()));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.ManagedElement;
+import entropy.configuration.ManagedElementSet;
+import entropy.configuration.SimpleManagedElementSet;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * A set of elements that cannot be modified once made.
+ * Every mutator throws an {@link UnsupportedOperationException} while
+ * {@link #clone()} provides a modifiable copy.
+ *
+ * @author Fabien Hermenier
+ */
+final class ReadOnlyElementSet<E extends ManagedElement> extends SimpleManagedElementSet<E> {
+
+    private boolean sealed = false;
+
+    /**
+     * Make a read-only copy of a set.
+     *
+     * @param elems the elements of the set
+     */
+    ReadOnlyElementSet(Collection<E> elems) {
+        super.addAll(elems);
+        sealed = true;
+    }
+
+    private void checkMutable() {
+        if (sealed) {
+            throw new UnsupportedOperationException("The set cannot be modified");
+        }
+    }
+
+    @Override
+    public boolean add(E e) {
+        checkMutable();
+        return super.add(e);
+    }
+
+    @Override
+    public void add(int i, E e) {
+        checkMutable();
+        super.add(i, e);
+    }
+
+    @Override
+    public E set(int i, E e) {
+        checkMutable();
+        return super.set(i, e);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        checkMutable();
+        return super.addAll(c);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        checkMutable();
+        return super.remove(o);
+    }
+
+    @Override
+    public E remove(int i) {
+        checkMutable();
+        return super.remove(i);
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        checkMutable();
+        return super.removeAll(c);
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        checkMutable();
+        return super.retainAll(c);
+    }
+
+    @Override
+    public void clear() {
+        checkMutable();
+        super.clear();
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        final Iterator<E> it = super.iterator();
+        return new Iterator<E>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return it.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("The set cannot be modified");
+            }
+        };
+    }
+
+    /**
+     * Make a modifiable copy of the set.
+     *
+     * @return a new set
+     */
+    @Override
+    public ManagedElementSet<E> clone() {
+        ManagedElementSet<E> cpy = new SimpleManagedElementSet<E>();
+        for (E e : this) {
+            cpy.add(e);
+        }
+        return cpy;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+/**
+ * A strategy to relax a generation problem that cannot be solved.
+ * A relaxation alters the specification of the instance in place.
+ *
+ * @author Fabien Hermenier
+ * @see Generator#relaxedGenerate(entropy.plan.Plan, InstanceSpec, Relaxation, int)
+ */
+public interface Relaxation {
+
+    /**
+     * Relax a specification.
+     *
+     * @param d    the reasons of the last failure
+     * @param spec the specification to relax
+     * @return {@code true} if the specification has been relaxed.
+     *         {@code false} if there is nothing left to relax
+     */
+    boolean relax(Diagnosis d, InstanceSpec spec);
+}
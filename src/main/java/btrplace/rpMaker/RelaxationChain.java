@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A relaxation that delegates to a sequence of relaxations.
+ * At each call, the first relaxation that succeeds is used, so
+ * the cheapest relaxations are exhausted first.
+ *
+ * @author Fabien Hermenier
+ */
+public class RelaxationChain implements Relaxation {
+
+    private List<Relaxation> chain;
+
+    /**
+     * Make a new chain.
+     *
+     * @param rs the relaxations, by order of preference
+     */
+    public RelaxationChain(Relaxation... rs) {
+        this.chain = Arrays.asList(rs);
+    }
+
+    @Override
+    public boolean relax(Diagnosis d, InstanceSpec spec) {
+        for (Relaxation r : chain) {
+            if (r.relax(d, spec)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
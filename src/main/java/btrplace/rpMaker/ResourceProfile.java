@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.VirtualMachine;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A description of the resources and the options of a VM.
+ * A profile is shared by all the {@link StampedVirtualMachine} stamped from a same template VM
+ * and is never modified while shared: a VM that is altered first makes its own copy.
+ *
+ * @author Fabien Hermenier
+ */
+public final class ResourceProfile {
+
+    private int nbCPUs;
+
+    private int cpuConsumption;
+
+    private int cpuDemand;
+
+    private int cpuMax;
+
+    private int memoryConsumption;
+
+    private int memoryDemand;
+
+    private String template;
+
+    private Map<String, String> options;
+
+    private ResourceProfile(int nbCPUs, int cpuConsumption, int cpuDemand, int cpuMax,
+                            int memoryConsumption, int memoryDemand, String template, Map<String, String> options) {
+        this.nbCPUs = nbCPUs;
+        this.cpuConsumption = cpuConsumption;
+        this.cpuDemand = cpuDemand;
+        this.cpuMax = cpuMax;
+        this.memoryConsumption = memoryConsumption;
+        this.memoryDemand = memoryDemand;
+        this.template = template;
+        this.options = options;
+    }
+
+    /**
+     * Make the profile of a VM.
+     *
+     * @param vm the VM
+     * @return a new profile
+     */
+    public static ResourceProfile of(VirtualMachine vm) {
+        return new ResourceProfile(vm.getNbOfCPUs(), vm.getCPUConsumption(), vm.getCPUDemand(), vm.getCPUMax(),
+                vm.getMemoryConsumption(), vm.getMemoryDemand(), vm.getTemplate(),
+                Collections.unmodifiableMap(new HashMap<String, String>(vm.getOptions())));
+    }
+
+    /**
+     * Check if a VM matches the profile.
+     *
+     * @param vm the VM to check
+     * @return {@code true} iff the VM has the same resources, template and options than the profile
+     */
+    public boolean matches(VirtualMachine vm) {
+        return nbCPUs == vm.getNbOfCPUs()
+                && cpuConsumption == vm.getCPUConsumption()
+                && cpuDemand == vm.getCPUDemand()
+                && cpuMax == vm.getCPUMax()
+                && memoryConsumption == vm.getMemoryConsumption()
+                && memoryDemand == vm.getMemoryDemand()
+                && (template == null ? vm.getTemplate() == null : template.equals(vm.getTemplate()))
+                && options.equals(vm.getOptions());
+    }
+
+    public int getNbOfCPUs() {
+        return nbCPUs;
+    }
+
+    public int getCPUConsumption() {
+        return cpuConsumption;
+    }
+
+    public int getCPUDemand() {
+        return cpuDemand;
+    }
+
+    public int getCPUMax() {
+        return cpuMax;
+    }
+
+    public int getMemoryConsumption() {
+        return memoryConsumption;
+    }
+
+    public int getMemoryDemand() {
+        return memoryDemand;
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * Get the options.
+     *
+     * @return an unmodifiable map
+     */
+    public Map<String, String> getOptions() {
+        return options;
+    }
+
+    /**
+     * Make a private copy of the profile, to be modified by a single VM.
+     *
+     * @return a new profile
+     */
+    ResourceProfile copy() {
+        return new ResourceProfile(nbCPUs, cpuConsumption, cpuDemand, cpuMax, memoryConsumption, memoryDemand,
+                template, options);
+    }
+
+    void setNbOfCPUs(int nb) {
+        this.nbCPUs = nb;
+    }
+
+    void setCPUConsumption(int c) {
+        this.cpuConsumption = c;
+    }
+
+    void setCPUDemand(int d) {
+        this.cpuDemand = d;
+    }
+
+    void setCPUMax(int m) {
+        this.cpuMax = m;
+    }
+
+    void setMemoryConsumption(int c) {
+        this.memoryConsumption = c;
+    }
+
+    void setMemoryDemand(int d) {
+        this.memoryDemand = d;
+    }
+
+    void setTemplate(String t) {
+        this.template = t;
+    }
+
+    /**
+     * Add an option.
+     *
+     * @param k the option key
+     * @param v the option value. May be {@code null}
+     */
+    void addOption(String k, String v) {
+        Map<String, String> opts = new HashMap<String, String>(options);
+        opts.put(k, v);
+        this.options = Collections.unmodifiableMap(opts);
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.VirtualMachine;
+
+import java.util.Map;
+
+/**
+ * A VM stamped from a template VM.
+ * The VM only stores its name and a reference to a {@link ResourceProfile} shared with the
+ * other VMs stamped from the same template VM. The VM makes its own copy of the profile
+ * the first time one of its resources or options is modified.
+ * The name of a VM stamped with a prefix is only built when it is first needed.
+ * <p/>
+ * Two stamped VMs are equal iff they have the same name. A stamped VM is never equal
+ * to a VM of another class, as {@link entropy.configuration.SimpleVirtualMachine} does.
+ *
+ * @author Fabien Hermenier
+ */
+public class StampedVirtualMachine implements VirtualMachine {
+
+    /**
+     * The full name of the VM. {@code null} until built from the prefix and the base name.
+     */
+    private volatile String name;
+
+    private String prefix;
+
+    private String base;
+
+    private ResourceProfile profile;
+
+    /**
+     * {@code true} once the VM has its own profile.
+     */
+    private boolean owner;
+
+    /**
+     * Make a new VM.
+     *
+     * @param name    the name of the VM
+     * @param profile the shared profile of the VM
+     */
+    public StampedVirtualMachine(String name, ResourceProfile profile) {
+        this("", name, profile);
+    }
+
+    /**
+     * Make a new VM named by a prefix and a base name.
+     *
+     * @param prefix  the prefix of the name
+     * @param base    the base name, usually the name of the template VM
+     * @param profile the shared profile of the VM
+     */
+    public StampedVirtualMachine(String prefix, String base, ResourceProfile profile) {
+        this.prefix = prefix;
+        this.base = base;
+        this.profile = profile;
+    }
+
+    /**
+     * Get the current profile of the VM.
+     *
+     * @return the profile
+     */
+    public ResourceProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Get a profile that can be modified.
+     *
+     * @return the own profile of the VM
+     */
+    private ResourceProfile writable() {
+        if (!owner) {
+            profile = profile.copy();
+            owner = true;
+        }
+        return profile;
+    }
+
+    @Override
+    public String getName() {
+        String n = name;
+        if (n == null) {
+            n = prefix.concat(base);
+            name = n;
+        }
+        return n;
+    }
+
+    @Override
+    public void rename(String n) {
+        this.prefix = "";
+        this.base = n;
+        this.name = n;
+    }
+
+    @Override
+    public int getNbOfCPUs() {
+        return profile.getNbOfCPUs();
+    }
+
+    @Override
+    public void setNbOfCPUs(int nb) {
+        writable().setNbOfCPUs(nb);
+    }
+
+    @Override
+    public int getCPUConsumption() {
+        return profile.getCPUConsumption();
+    }
+
+    @Override
+    public void setCPUConsumption(int c) {
+        writable().setCPUConsumption(c);
+    }
+
+    @Override
+    public int getCPUDemand() {
+        return profile.getCPUDemand();
+    }
+
+    @Override
+    public void setCPUDemand(int d) {
+        writable().setCPUDemand(d);
+    }
+
+    @Override
+    public int getCPUMax() {
+        return profile.getCPUMax();
+    }
+
+    @Override
+    public void setCPUMax(int m) {
+        writable().setCPUMax(m);
+    }
+
+    @Override
+    public int getMemoryConsumption() {
+        return profile.getMemoryConsumption();
+    }
+
+    @Override
+    public void setMemoryConsumption(int c) {
+        writable().setMemoryConsumption(c);
+    }
+
+    @Override
+    public int getMemoryDemand() {
+        return profile.getMemoryDemand();
+    }
+
+    @Override
+    public void setMemoryDemand(int d) {
+        writable().setMemoryDemand(d);
+    }
+
+    @Override
+    public String getTemplate() {
+        return profile.getTemplate();
+    }
+
+    @Override
+    public void setTemplate(String t) {
+        writable().setTemplate(t);
+    }
+
+    @Override
+    public void addOption(String k) {
+        writable().addOption(k, null);
+    }
+
+    @Override
+    public void addOption(String k, String v) {
+        writable().addOption(k, v);
+    }
+
+    @Override
+    public boolean checkOption(String k) {
+        return profile.getOptions().containsKey(k);
+    }
+
+    @Override
+    public String getOption(String k) {
+        return profile.getOptions().get(k);
+    }
+
+    @Override
+    public Map<String, String> getOptions() {
+        return profile.getOptions();
+    }
+
+    /**
+     * Clone the VM. The clone shares the profile of this VM until one of them is modified.
+     *
+     * @return a new VM
+     */
+    @Override
+    public StampedVirtualMachine clone() {
+        //The profile of this VM is shared from now on
+        owner = false;
+        return new StampedVirtualMachine(prefix, base, profile);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || o.getClass() != getClass()) {
+            return false;
+        }
+        return getName().equals(((StampedVirtualMachine) o).getName());
+    }
+
+    @Override
+    public int hashCode() {
+        return getName().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.ManagedElementSet;
+import entropy.configuration.Node;
+import entropy.configuration.SimpleManagedElementSet;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Generate the instances of a grid of parameters.
+ * Each cell of the grid is made through 4 stages: the generation of a base
+ * configuration for a number of vjobs, a random CPU demand for the vjobs, the failure
+ * of a ratio of nodes, then a shuffle of the running VMs.
+ * <p/>
+ * A stage is computed only once for all the cells sharing the same prefix of parameters:
+ * a base configuration is generated once per number of vjobs, the demand stage alters a copy
+ * of it, then the failure and the shuffle stages alter {@link ConfigurationFork}s of the configuration
+ * of their previous stage so they only store their changes. The instances of the cells sharing the
+ * same demand stage then share their VMs and their vjobs. The stages of a same level are computed in parallel,
+ * on the pool shared by the short computations.
+ * <p/>
+ * The random sources of the stages are derived from a single seed before running
+ * anything, so a sweep is reproducible whatever the number of workers.
+ *
+ * @author Fabien Hermenier
+ */
+public class Sweep {
+
+    private VJobTemplate tpl;
+
+    private ManagedElementSet<Node> onlines;
+
+    private PlanFactory factory;
+
+    private int[] nbVJobs = {1};
+
+    private double[][] demandBounds = {null};
+
+    private double[] failureRatios = {0};
+
+    private int[] shuffleDepths = {0};
+
+    /**
+     * Make a new sweep with a single cell.
+     *
+     * @param tpl     the template to instantiate the vjobs
+     * @param onlines the online nodes of the base configurations
+     * @param f       the factory to create the plan modules that generate the base configurations
+     */
+    public Sweep(VJobTemplate tpl, ManagedElementSet<Node> onlines, PlanFactory f) {
+        this.tpl = tpl;
+        this.onlines = onlines;
+        this.factory = f;
+    }
+
+    /**
+     * Set the number of vjobs to instantiate for the base configurations.
+     *
+     * @param counts the possible values
+     */
+    public void setVJobCounts(int... counts) {
+        this.nbVJobs = counts;
+    }
+
+    /**
+     * Set the bounds of the CPU demand ratio of the vjobs.
+     * A {@code null} value keeps the demand of the template.
+     *
+     * @param bounds the possible values, each one being an array with the lower and the upper bound
+     * @see VJobAlterer#setRandomCPUDemand(double, double, List, Random)
+     */
+    public void setDemandBounds(double[]... bounds) {
+        this.demandBounds = bounds;
+    }
+
+    /**
+     * Set the ratio of nodes to fail.
+     *
+     * @param ratios the possible values
+     * @see ConfigurationAlterer#applyNodeFailureRatio(ConfigurationFork, double, Random)
+     */
+    public void setFailureRatios(double... ratios) {
+        this.failureRatios = ratios;
+    }
+
+    /**
+     * Set the number of moves to shuffle the running VMs.
+     *
+     * @param depths the possible values
+     * @see ConfigurationAlterer#shuffle(ConfigurationFork, ConstraintIndex, int, Random)
+     */
+    public void setShuffleDepths(int... depths) {
+        this.shuffleDepths = depths;
+    }
+
+    /**
+     * Get the number of cells in the grid.
+     *
+     * @return a positive integer
+     */
+    public int size() {
+        return nbVJobs.length * demandBounds.length * failureRatios.length * shuffleDepths.length;
+    }
+
+    /**
+     * Run the sweep.
+     *
+     * @param seed      the seed to derive the random sources of the stages
+     * @param nbWorkers the number of workers to generate the base configurations
+     * @return the cells, ordered by number of vjobs, demand bounds, failure ratio then shuffle depth
+     * @throws InterruptedException  if the calling thread has been interrupted while generating the base configurations
+     * @throws IllegalStateException if the calling thread has been interrupted while altering them
+     */
+    public List<Cell> run(long seed, int nbWorkers) throws InterruptedException {
+        //Derive the random sources, in a fixed order
+        Random root = new Random(seed);
+        int nbDemands = nbVJobs.length * demandBounds.length;
+        int nbFailures = nbDemands * failureRatios.length;
+        Random[] demandRnds = split(root, nbDemands);
+        Random[] failureRnds = split(root, nbFailures);
+        Random[] shuffleRnds = split(root, size());
+
+        //The base configurations
+        List<InstanceSpec> specs = new ArrayList<InstanceSpec>(nbVJobs.length);
+        for (int nb : nbVJobs) {
+            specs.add(new InstanceSpec(onlines, new SimpleManagedElementSet<Node>(), DefaultVJobTemplate.instantiate(tpl, nb, "vjob-%d", "v%d.")));
+        }
+        final Instance[] bases = new Instance[specs.size()];
+        Generator.generate(factory, specs, nbWorkers, new GenerationListener() {
+            @Override
+            public void generated(GenerationResult res) {
+                if (res.isSuccessful()) {
+                    bases[res.getIndex()] = new Instance(res.getConfiguration(), res.getSpec().getVJobs());
+                }
+            }
+        });
+
+        List<Callable<Instance>> tasks = new ArrayList<Callable<Instance>>(nbDemands);
+        for (int i = 0; i < nbDemands; i++) {
+            final double[] bounds = demandBounds[i % demandBounds.length];
+            tasks.add(new Stage(bases[i / demandBounds.length], demandRnds[i]) {
+                @Override
+                void alter(Instance in, Random rnd) {
+                    if (bounds != null) {
+                        VJobAlterer.setRandomCPUDemand(bounds[0], bounds[1], in.getVJobs(), rnd);
+                    }
+                }
+            });
+        }
+        List<Instance> demands = Workers.invokeAll(tasks);
+        List<ConstraintIndex> indexes = new ArrayList<ConstraintIndex>(nbDemands);
+        for (Instance in : demands) {
+            indexes.add(in == null ? null : new ConstraintIndex(in.getVJobs()));
+        }
+
+        List<Callable<ConfigurationFork>> failureTasks = new ArrayList<Callable<ConfigurationFork>>(nbFailures);
+        for (int i = 0; i < nbFailures; i++) {
+            final Instance from = demands.get(i / failureRatios.length);
+            final double ratio = failureRatios[i % failureRatios.length];
+            final Random rnd = failureRnds[i];
+            failureTasks.add(new Callable<ConfigurationFork>() {
+                @Override
+                public ConfigurationFork call() {
+                    if (from == null) {
+                        return null;
+                    }
+                    ConfigurationFork f = new ConfigurationFork(from.getConfiguration());
+                    if (ratio > 0) {
+                        ConfigurationAlterer.applyNodeFailureRatio(f, ratio, rnd);
+                    }
+                    return f;
+                }
+            });
+        }
+        List<ConfigurationFork> failures = Workers.invokeAll(failureTasks);
+
+        //The shuffles fork their parent from here so it is frozen before being shared by the workers
+        List<Callable<Instance>> shuffleTasks = new ArrayList<Callable<Instance>>(size());
+        for (int i = 0; i < size(); i++) {
+            int d = i / shuffleDepths.length / failureRatios.length;
+            ConfigurationFork parent = failures.get(i / shuffleDepths.length);
+            final ConfigurationFork f = parent == null ? null : parent.fork();
+            final Instance from = demands.get(d);
+            final ConstraintIndex idx = indexes.get(d);
+            final int depth = shuffleDepths[i % shuffleDepths.length];
+            final Random rnd = shuffleRnds[i];
+            shuffleTasks.add(new Callable<Instance>() {
+                @Override
+                public Instance call() {
+                    if (f == null) {
+                        return null;
+                    }
+                    if (depth > 0) {
+                        ConfigurationAlterer.shuffle(f, idx, depth, rnd);
+                    }
+                    return new Instance(f.toConfiguration(), from.getVJobs());
+                }
+            });
+        }
+        List<Instance> leaves = Workers.invokeAll(shuffleTasks);
+
+        List<Cell> cells = new ArrayList<Cell>(leaves.size());
+        for (int i = 0; i < leaves.size(); i++) {
+            int s = i % shuffleDepths.length;
+            int f = (i / shuffleDepths.length) % failureRatios.length;
+            int d = (i / shuffleDepths.length / failureRatios.length) % demandBounds.length;
+            int c = i / shuffleDepths.length / failureRatios.length / demandBounds.length;
+            cells.add(new Cell(nbVJobs[c], demandBounds[d], failureRatios[f], shuffleDepths[s], leaves.get(i)));
+        }
+        return cells;
+    }
+
+    private static Random[] split(Random root, int nb) {
+        Random[] rnds = new Random[nb];
+        for (int i = 0; i < nb; i++) {
+            rnds[i] = Randoms.split(root);
+        }
+        return rnds;
+    }
+
+    /**
+     * A stage that alters a copy of the base instance.
+     * Nothing is computed if the previous stage failed.
+     */
+    private abstract static class Stage implements Callable<Instance> {
+
+        private Instance from;
+
+        private Random rnd;
+
+        Stage(Instance from, Random rnd) {
+            this.from = from;
+            this.rnd = rnd;
+        }
+
+        @Override
+        public Instance call() {
+            if (from == null) {
+                return null;
+            }
+            Instance in = from.copy();
+            alter(in, rnd);
+            return in;
+        }
+
+        abstract void alter(Instance in, Random rnd);
+    }
+
+    /**
+     * A cell of the grid.
+     */
+    public static class Cell {
+
+        private int nbVJobs;
+
+        private double[] demandBounds;
+
+        private double failureRatio;
+
+        private int shuffleDepth;
+
+        private Instance instance;
+
+        Cell(int nbVJobs, double[] demandBounds, double failureRatio, int shuffleDepth, Instance instance) {
+            this.nbVJobs = nbVJobs;
+            this.demandBounds = demandBounds;
+            this.failureRatio = failureRatio;
+            this.shuffleDepth = shuffleDepth;
+            this.instance = instance;
+        }
+
+        /**
+         * Get the number of vjobs.
+         *
+         * @return a positive integer
+         */
+        public int getNbVJobs() {
+            return nbVJobs;
+        }
+
+        /**
+         * Get the bounds of the CPU demand ratio.
+         *
+         * @return an array with the lower and the upper bound. {@code null} if the demand was not altered
+         */
+        public double[] getDemandBounds() {
+            return demandBounds;
+        }
+
+        /**
+         * Get the ratio of failed nodes.
+         *
+         * @return a ratio btw 0.0 and 1.0
+         */
+        public double getFailureRatio() {
+            return failureRatio;
+        }
+
+        /**
+         * Get the number of moves of the shuffle.
+         *
+         * @return a positive integer
+         */
+        public int getShuffleDepth() {
+            return shuffleDepth;
+        }
+
+        /**
+         * Get the generated instance.
+         * The instances of the cells sharing the same number of vjobs and demand bounds share
+         * their VMs and their vjobs.
+         *
+         * @return the instance. {@code null} if the base configuration cannot be generated
+         */
+        public Instance getInstance() {
+            return instance;
+        }
+
+        @Override
+        public String toString() {
+            return "vjobs=" + nbVJobs
+                    + ", demand=" + (demandBounds == null ? "-" : Arrays.toString(demandBounds))
+                    + ", failures=" + failureRatio
+                    + ", moves=" + shuffleDepth;
+        }
+    }
+}
@@ -24,8 +24,13 @@ import entropy.configuration.ResourcePicker;
 import entropy.configuration.VirtualMachine;
 import entropy.vjob.VJob;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * Tools to alter the resource consumption and demand of the VMs in a VJob.
@@ -34,6 +39,11 @@ import java.util.Random;
  */
 public final class VJobAlterer {
 
+    /**
+     * The number of vjobs from which the bulk operations are made in parallel.
+     */
+    static final int PARALLEL_THRESHOLD = 1000;
+
     private VJobAlterer() {
     }
 
@@ -55,10 +65,22 @@ public final class VJobAlterer {
      * @param criteria the resource to consider
      * @return an array containing all the sums. Order by #criteria
      */
-    public static int[] getResourceSum(List<VJob> vjobs, ResourcePicker.VMRc... criteria) {
+    public static int[] getResourceSum(List<VJob> vjobs, final ResourcePicker.VMRc... criteria) {
         int[] sums = new int[criteria.length];
-        for (VJob v : vjobs) {
-            int[] s = getResourceSum(v, criteria);
+        for (int[] s : parallel(vjobs, new Reduction<int[]>() {
+            @Override
+            public int[] apply(List<VJob> sub) {
+                int[] partial = new int[criteria.length];
+                for (VJob v : sub) {
+                    for (VirtualMachine vm : v.getVirtualMachines()) {
+                        for (int i = 0; i < criteria.length; i++) {
+                            partial[i] += ResourcePicker.get(vm, criteria[i]);
+                        }
+                    }
+                }
+                return partial;
+            }
+        })) {
             for (int i = 0; i < sums.length; i++) {
                 sums[i] += s[i];
             }
@@ -66,6 +88,43 @@ public final class VJobAlterer {
         return sums;
     }
 
+    /**
+     * A computation over a sublist of vjobs.
+     *
+     * @param <T> the type of result
+     */
+    private interface Reduction<T> {
+        T apply(List<VJob> sub);
+    }
+
+    /**
+     * Apply a computation over a list of vjobs.
+     * Large lists are split into one sublist per available processor that are processed in parallel.
+     *
+     * @param vjobs the vjobs
+     * @param r     the computation
+     * @param <T>   the type of result
+     * @return the result for each sublist
+     */
+    private static <T> List<T> parallel(List<VJob> vjobs, final Reduction<T> r) {
+        if (vjobs.size() < PARALLEL_THRESHOLD) {
+            return Collections.singletonList(r.apply(vjobs));
+        }
+        int nbChunks = Workers.defaultSize();
+        int chunkSize = (vjobs.size() + nbChunks - 1) / nbChunks;
+        List<Callable<T>> tasks = new ArrayList<Callable<T>>(nbChunks);
+        for (int from = 0; from < vjobs.size(); from += chunkSize) {
+            final List<VJob> sub = vjobs.subList(from, Math.min(vjobs.size(), from + chunkSize));
+            tasks.add(new Callable<T>() {
+                @Override
+                public T call() {
+                    return r.apply(sub);
+                }
+            });
+        }
+        return Workers.invokeAll(tasks);
+    }
+
     /**
      * Set the global CPU consumption of a vjob.
      * the consumption of each VM is computed using a ratio and its maximum alloted CPU usage.
@@ -111,6 +170,119 @@ public final class VJobAlterer {
         return sumRatios / v.getVirtualMachines().size();
     }
 
+    /**
+     * Set the global CPU consumption of vjobs.
+     * the consumption of each VM is computed using a ratio and its maximum alloted CPU usage.
+     * Large lists are altered in parallel.
+     *
+     * @param vjobs the vjobs to alter
+     * @param ratio btw 0.0 and 1.0
+     * @return the new global CPU consumption.
+     */
+    public static int setCPUConsumptionRatio(List<VJob> vjobs, final double ratio) {
+        int sum = 0;
+        for (Integer s : parallel(vjobs, new Reduction<Integer>() {
+            @Override
+            public Integer apply(List<VJob> sub) {
+                int partial = 0;
+                for (VJob v : sub) {
+                    partial += setCPUConsumptionRatio(v, ratio);
+                }
+                return partial;
+            }
+        })) {
+            sum += s;
+        }
+        return sum;
+    }
+
+    /**
+     * Set the global CPU consumption of vjobs while keeping a load tracker up to date.
+     *
+     * @param t     the tracker of the configuration that contains the VMs
+     * @param vjobs the vjobs to alter
+     * @param ratio btw 0.0 and 1.0
+     * @return the new global CPU consumption.
+     * @see #setCPUConsumptionRatio(java.util.List, double)
+     */
+    public static int setCPUConsumptionRatio(LoadTracker t, List<VJob> vjobs, double ratio) {
+        Set<VirtualMachine> vms = t.untrack(vjobs);
+        int sum = setCPUConsumptionRatio(vjobs, ratio);
+        t.track(vms);
+        return sum;
+    }
+
+    /**
+     * Set the global CPU demand of vjobs.
+     * the demand of each VM is computed using a ratio and its maximum alloted CPU usage.
+     * Large lists are altered in parallel.
+     *
+     * @param vjobs the vjobs to alter
+     * @param ratio btw 0.0 and 1.0
+     * @return the new global CPU demand.
+     */
+    public static int setCPUDemandRatio(List<VJob> vjobs, final double ratio) {
+        int sum = 0;
+        for (Integer s : parallel(vjobs, new Reduction<Integer>() {
+            @Override
+            public Integer apply(List<VJob> sub) {
+                int partial = 0;
+                for (VJob v : sub) {
+                    partial += setCPUDemandRatio(v, ratio);
+                }
+                return partial;
+            }
+        })) {
+            sum += s;
+        }
+        return sum;
+    }
+
+    /**
+     * Set the global CPU demand of vjobs while keeping a load tracker up to date.
+     *
+     * @param t     the tracker of the configuration that contains the VMs
+     * @param vjobs the vjobs to alter
+     * @param ratio btw 0.0 and 1.0
+     * @return the new global CPU demand.
+     * @see #setCPUDemandRatio(java.util.List, double)
+     */
+    public static int setCPUDemandRatio(LoadTracker t, List<VJob> vjobs, double ratio) {
+        Set<VirtualMachine> vms = t.untrack(vjobs);
+        int sum = setCPUDemandRatio(vjobs, ratio);
+        t.track(vms);
+        return sum;
+    }
+
+    /**
+     * Get the average CPU demand ratio of the VMs of several vjobs.
+     * Each VM has the same weight, whatever the size of its vjob.
+     *
+     * @param vjobs the vjobs
+     * @return the average ratio between the CPU demand and the maximum CPU usage of the VMs
+     */
+    public static double getCPUDemandRatio(List<VJob> vjobs) {
+        double sumRatios = 0d;
+        long nb = 0;
+        for (double[] s : parallel(vjobs, new Reduction<double[]>() {
+            @Override
+            public double[] apply(List<VJob> sub) {
+                double[] partial = new double[2];
+                for (VJob v : sub) {
+                    for (VirtualMachine vm : v.getVirtualMachines()) {
+                        partial[0] += 1d * vm.getCPUDemand() / vm.getCPUMax();
+                        partial[1]++;
+                    }
+                }
+                return partial;
+            }
+        })) {
+            sumRatios += s[0];
+            nb += (long) s[1];
+        }
+        return sumRatios / nb;
+    }
+
     /**
      * Set all the VMs in the vjob having their CPU consumption equals to their CPU demand.
      *
@@ -125,12 +297,50 @@ public final class VJobAlterer {
     }
 
     public static void setCPUConsumptionToDemand(List<VJob> vjobs) {
-        setCPUConsumptionToDemand(vjobs.toArray(new VJob[vjobs.size()]));
+        parallel(vjobs, new Reduction<Void>() {
+            @Override
+            public Void apply(List<VJob> sub) {
+                setCPUConsumptionToDemand(sub.toArray(new VJob[sub.size()]));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Set all the VMs in the vjobs having their CPU consumption equals to their CPU demand
+     * while keeping a load tracker up to date.
+     *
+     * @param t     the tracker of the configuration that contains the VMs
+     * @param vjobs the vjobs to alter
+     */
+    public static void setCPUConsumptionToDemand(LoadTracker t, List<VJob> vjobs) {
+        Set<VirtualMachine> vms = t.untrack(vjobs);
+        setCPUConsumptionToDemand(vjobs);
+        t.track(vms);
     }
 
 
     public static void setCPUDemandToConsumption(List<VJob> vjobs) {
-        setCPUDemandToConsumption(vjobs.toArray(new VJob[vjobs.size()]));
+        parallel(vjobs, new Reduction<Void>() {
+            @Override
+            public Void apply(List<VJob> sub) {
+                setCPUDemandToConsumption(sub.toArray(new VJob[sub.size()]));
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Set all the VMs in the vjobs having their CPU demand equals to their CPU consumption
+     * while keeping a load tracker up to date.
+     *
+     * @param t     the tracker of the configuration that contains the VMs
+     * @param vjobs the vjobs to alter
+     */
+    public static void setCPUDemandToConsumption(LoadTracker t, List<VJob> vjobs) {
+        Set<VirtualMachine> vms = t.untrack(vjobs);
+        setCPUDemandToConsumption(vjobs);
+        t.track(vms);
     }
 
     private static void setCPUDemandToConsumption(VJob... vjobs) {
@@ -141,24 +351,45 @@ public final class VJobAlterer {
         }
     }
 
-    private static Random random = new Random();
-
     public static void setRandomCPUConsumption(List<VJob> vjobs) {
-        setRandomCPUConsumption(vjobs.toArray(new VJob[vjobs.size()]));
+        setRandomCPUConsumption(vjobs, Randoms.current());
     }
 
     public static void setRandomCPUConsumption(VJob... vjobs) {
+        setRandomCPUConsumption(Arrays.asList(vjobs), Randoms.current());
+    }
+
+    /**
+     * Set a random global CPU consumption to each vjob.
+     *
+     * @param vjobs the vjobs to alter
+     * @param rnd   the random source
+     */
+    public static void setRandomCPUConsumption(List<VJob> vjobs, Random rnd) {
         for (VJob v : vjobs) {
-            VJobAlterer.setCPUConsumptionRatio(v, random.nextDouble());
+            VJobAlterer.setCPUConsumptionRatio(v, rnd.nextDouble());
         }
     }
 
+    /**
+     * Set a random global CPU consumption to each vjob while keeping a load tracker up to date.
+     *
+     * @param t     the tracker of the configuration that contains the VMs
+     * @param vjobs the vjobs to alter
+     * @param rnd   the random source
+     */
+    public static void setRandomCPUConsumption(LoadTracker t, List<VJob> vjobs, Random rnd) {
+        Set<VirtualMachine> vms = t.untrack(vjobs);
+        setRandomCPUConsumption(vjobs, rnd);
+        t.track(vms);
+    }
+
     public static void setRandomCPUDemand(List<VJob> vjobs) {
-        setRandomCPUDemand(0, 1, vjobs.toArray(new VJob[vjobs.size()]));
+        setRandomCPUDemand(0, 1, vjobs);
     }
 
     public static void setRandomCPUDemand(double lb, double ub, List<VJob> vjobs) {
-        setRandomCPUDemand(lb, ub, vjobs.toArray(new VJob[vjobs.size()]));
+        setRandomCPUDemand(lb, ub, vjobs, Randoms.current());
     }
 
 
@@ -167,9 +398,36 @@ public final class VJobAlterer {
     }
 
     public static void setRandomCPUDemand(double lb, double ub, VJob... vjobs) {
+        setRandomCPUDemand(lb, ub, Arrays.asList(vjobs), Randoms.current());
+    }
+
+    /**
+     * Set a random global CPU demand to each vjob.
+     *
+     * @param lb    the lower bound of the demand ratio
+     * @param ub    the upper bound of the demand ratio
+     * @param vjobs the vjobs to alter
+     * @param rnd   the random source
+     */
+    public static void setRandomCPUDemand(double lb, double ub, List<VJob> vjobs, Random rnd) {
         double diff = ub - lb;
         for (VJob v : vjobs) {
-            VJobAlterer.setCPUDemandRatio(v, random.nextDouble() * diff + lb);
+            VJobAlterer.setCPUDemandRatio(v, rnd.nextDouble() * diff + lb);
         }
     }
+
+    /**
+     * Set a random global CPU demand to each vjob while keeping a load tracker up to date.
+     *
+     * @param t     the tracker of the configuration that contains the VMs
+     * @param lb    the lower bound of the demand ratio
+     * @param ub    the upper bound of the demand ratio
+     * @param vjobs the vjobs to alter
+     * @param rnd   the random source
+     */
+    public static void setRandomCPUDemand(LoadTracker t, double lb, double ub, List<VJob> vjobs, Random rnd) {
+        Set<VirtualMachine> vms = t.untrack(vjobs);
+        setRandomCPUDemand(lb, ub, vjobs, rnd);
+        t.track(vms);
+    }
 }
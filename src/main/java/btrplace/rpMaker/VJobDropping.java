@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
+import entropy.vjob.PlacementConstraint;
+import entropy.vjob.VJob;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A relaxation that drops one vjob.
+ * The dropped vjob is the one with the most unsatisfied constraints, then with the
+ * most VMs on overloaded nodes. Without such information, the last vjob is dropped.
+ *
+ * @author Fabien Hermenier
+ */
+public class VJobDropping implements Relaxation {
+
+    @Override
+    public boolean relax(Diagnosis d, InstanceSpec spec) {
+        List<VJob> jobs = spec.getVJobs();
+        if (jobs.isEmpty()) {
+            return false;
+        }
+        Configuration dst = d.getDestination();
+        Set<Node> overloaded = new HashSet<Node>(d.getOverloadedNodes());
+        int worst = jobs.size() - 1;
+        int worstUnsat = 0;
+        int worstOverloaded = 0;
+        for (int i = 0; i < jobs.size(); i++) {
+            VJob v = jobs.get(i);
+            int unsat = 0;
+            for (PlacementConstraint c : d.getUnsatisfiedConstraints()) {
+                if (v.getConstraints().contains(c)) {
+                    unsat++;
+                }
+            }
+            int nbOverloaded = 0;
+            if (dst != null && !overloaded.isEmpty()) {
+                for (VirtualMachine vm : v.getVirtualMachines()) {
+                    if (overloaded.contains(dst.getLocation(vm))) {
+                        nbOverloaded++;
+                    }
+                }
+            }
+            if (unsat > worstUnsat || (unsat == worstUnsat && nbOverloaded > worstOverloaded)) {
+                worst = i;
+                worstUnsat = unsat;
+                worstOverloaded = nbOverloaded;
+            }
+        }
+        jobs.remove(worst);
+        return true;
+    }
+}
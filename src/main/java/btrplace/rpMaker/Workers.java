@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tools to create the pools of workers used by the parallel operations.
+ * Workers are daemon threads so a solver that does not react to
+ * an interruption cannot prevent the JVM from exiting.
+ * The short computations share a single pool while each generation
+ * makes its own pool, sized for its plan modules.
+ *
+ * @author Fabien Hermenier
+ */
+final class Workers {
+
+    private static final AtomicInteger POOL_ID = new AtomicInteger();
+
+    private Workers() {
+    }
+
+    /**
+     * Holder of the pool shared by the short computations, created on first use.
+     * Its workers help while joining so a task can safely run parallel computations itself.
+     */
+    private static final class Shared {
+        private static final ForkJoinPool POOL = new ForkJoinPool(defaultSize());
+    }
+
+    /**
+     * Get the default number of workers.
+     *
+     * @return the number of available processors
+     */
+    static int defaultSize() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Make a new pool of workers.
+     *
+     * @param nb the number of workers
+     * @return the pool. It has to be shut down by the caller
+     */
+    static ExecutorService newPool(int nb) {
+        final String prefix = "rpMaker-" + POOL_ID.incrementAndGet() + "-";
+        return Executors.newFixedThreadPool(nb, new ThreadFactory() {
+            private int nbThreads = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, prefix + nbThreads++);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Shut down a pool without waiting for its running tasks.
+     * The pool is interrupted and an action is executed once all its tasks are over.
+     * The action runs in a daemon thread, so the caller never waits for a task that ignores interruptions.
+     *
+     * @param pool  the pool to shut down
+     * @param after the action to execute once the pool terminated
+     */
+    static void release(final ExecutorService pool, final Runnable after) {
+        pool.shutdownNow();
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
+                        //Keep waiting
+                    }
+                } catch (InterruptedException e) {
+                    //Nobody interrupts this thread, run the action anyway
+                }
+                after.run();
+            }
+        }, "rpMaker-release-" + POOL_ID.incrementAndGet());
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Execute short tasks in parallel on the shared pool and wait for their completion.
+     *
+     * @param tasks the tasks to execute
+     * @param <T>   the type of result
+     * @return the results of the tasks, in the same order
+     * @throws IllegalStateException if the calling thread has been interrupted or a task failed with a checked exception.
+     *                               A runtime exception thrown by a task is re-thrown as is.
+     */
+    static <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+        List<T> res = new ArrayList<T>(tasks.size());
+        try {
+            for (Future<T> f : Shared.POOL.invokeAll(tasks)) {
+                res.add(f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return res;
+    }
+}
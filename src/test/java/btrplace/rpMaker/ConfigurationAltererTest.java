@@ -28,7 +28,10 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 /**
  * Unit tests for {@link btrplace.rpMaker.ConfigurationAlterer}
@@ -83,4 +86,181 @@ public class ConfigurationAltererTest {
 
         Assert.assertFalse(ConfigurationAlterer.relocate(cfg, vm, vjobs));
     }
+
+    public void testRelocateOnDenseConfiguration() {
+        Configuration cfg = new SimpleConfiguration();
+        for (int i = 0; i < 100; i++) {
+            Node n = new SimpleNode("N" + i, 1, 2, 2);
+            cfg.addOnline(n);
+            cfg.setRunOn(new SimpleVirtualMachine("VM" + i + "-1", 1, 1, 1), n);
+            if (i != 42) {
+                cfg.setRunOn(new SimpleVirtualMachine("VM" + i + "-2", 1, 1, 1), n);
+            }
+        }
+        List<VJob> vjobs = new ArrayList<VJob>();
+        CapacityIndex capa = new CapacityIndex(cfg);
+        VirtualMachine vm = cfg.getRunnings().get("VM0-1");
+        //A single node can host the VM, a single try is enough
+        Assert.assertTrue(ConfigurationAlterer.relocate(cfg, vm, new ConstraintIndex(vjobs), capa, 1));
+        Assert.assertEquals(cfg.getLocation(vm).getName(), "N42");
+        Assert.assertEquals(capa.getFreeCPU(cfg.getOnlines().get("N42")), 0);
+        Assert.assertEquals(capa.getFreeCPU(cfg.getOnlines().get("N0")), 1);
+        Assert.assertTrue(Configurations.currentlyOverloadedNodes(cfg).isEmpty());
+    }
+
+    public void testLoadReport() {
+        Configuration cfg = new SimpleConfiguration();
+        for (int i = 0; i < 10; i++) {
+            Node n = new SimpleNode("N" + i, 1, 10, 10);
+            cfg.addOnline(n);
+            VirtualMachine vm = new SimpleVirtualMachine("VM" + i, 1, i + 1, 5);
+            vm.setCPUDemand(2 * (i + 1));
+            cfg.setRunOn(vm, n);
+        }
+        cfg.addWaiting(new SimpleVirtualMachine("VM10", 1, 5, 5));
+        LoadReport r = ConfigurationAlterer.getLoadReport(cfg);
+        Assert.assertEquals(r.getLoad(LoadReport.Resource.cpuConsumption), ConfigurationAlterer.getCPUConsumptionLoad(cfg));
+        Assert.assertEquals(r.getLoad(LoadReport.Resource.cpuDemand), ConfigurationAlterer.getCPUDemandLoad(cfg));
+        Assert.assertEquals(r.getLoad(LoadReport.Resource.memoryConsumption), ConfigurationAlterer.getMemoryConsumptionLoad(cfg));
+        Assert.assertEquals(r.getHistogram(LoadReport.Resource.memoryConsumption)[5], 10);
+        Assert.assertEquals(r.getPercentile(LoadReport.Resource.cpuConsumption, 0.5), 0.5d);
+        Assert.assertEquals(r.getPercentile(LoadReport.Resource.cpuConsumption, 1), 1.0d);
+        //N5 to N9 have a CPU demand exceeding their capacity
+        Assert.assertEquals(r.getNbCurrentlyOverloadedNodes(), 0);
+        Assert.assertEquals(r.getNbFutureOverloadedNodes(), 5);
+        Assert.assertEquals(r.getHistogram(LoadReport.Resource.cpuDemand)[LoadReport.NB_BUCKETS - 1], 5);
+    }
+
+    public void testLoadTracker() {
+        Configuration cfg = new SimpleConfiguration();
+        for (int i = 0; i < 100; i++) {
+            Node n = new SimpleNode("N" + i, 10, 10, 10);
+            cfg.addOnline(n);
+            cfg.setRunOn(new SimpleVirtualMachine("VM" + i + "-1", 1, 2, 3), n);
+            cfg.setSleepOn(new SimpleVirtualMachine("VM" + i + "-2", 1, 1, 1), n);
+        }
+        LoadTracker t = new LoadTracker(cfg);
+        ConfigurationAlterer.applyNodeFailureRatio(t, 0.2);
+        Assert.assertEquals(cfg.getOnlines().size(), 80);
+        Assert.assertEquals(t.getCPUConsumptionLoad(), ConfigurationAlterer.getCPUConsumptionLoad(cfg));
+        Assert.assertEquals(t.getCPUDemandLoad(), ConfigurationAlterer.getCPUDemandLoad(cfg));
+        Assert.assertEquals(t.getMemoryConsumptionLoad(), ConfigurationAlterer.getMemoryConsumptionLoad(cfg));
+        t.setRunOn(new SimpleVirtualMachine("VMx", 1, 5, 5), cfg.getOnlines().get(0));
+        Assert.assertEquals(t.getCPUConsumptionLoad(), ConfigurationAlterer.getCPUConsumptionLoad(cfg));
+
+        //Demand changes made through the tracker keep it up to date
+        VJob v = new DefaultVJob("v");
+        v.addVirtualMachines(cfg.getAllVirtualMachines());
+        List<VJob> vjobs = new ArrayList<VJob>();
+        vjobs.add(v);
+        VJobAlterer.setCPUDemandRatio(t, vjobs, 0.5);
+        Assert.assertEquals(t.getCPUDemandLoad(), ConfigurationAlterer.getCPUDemandLoad(cfg));
+        VJobAlterer.setCPUConsumptionToDemand(t, vjobs);
+        Assert.assertEquals(t.getCPUConsumptionLoad(), ConfigurationAlterer.getCPUConsumptionLoad(cfg));
+    }
+
+    private static Configuration makeShuffleable() {
+        Configuration cfg = new SimpleConfiguration();
+        for (int i = 0; i < 50; i++) {
+            Node n = new SimpleNode("N" + i, 1, 4, 4);
+            cfg.addOnline(n);
+            cfg.setRunOn(new SimpleVirtualMachine("VM" + i, 1, 1, 1), n);
+        }
+        return cfg;
+    }
+
+    public void testReproducibleShuffle() {
+        Configuration cfg1 = makeShuffleable();
+        Configuration cfg2 = makeShuffleable();
+        List<VJob> vjobs = new ArrayList<VJob>();
+        ConfigurationAlterer.shuffle(cfg1, vjobs, 100, new Random(42));
+        ConfigurationAlterer.shuffle(cfg2, vjobs, 100, new Random(42));
+        for (VirtualMachine vm : cfg1.getRunnings()) {
+            Assert.assertEquals(cfg2.getLocation(vm), cfg1.getLocation(vm));
+        }
+        Assert.assertTrue(Configurations.currentlyOverloadedNodes(cfg1).isEmpty());
+    }
+
+    public void testJournal() {
+        Configuration cfg = makeShuffleable();
+        Map<VirtualMachine, Node> initial = new HashMap<VirtualMachine, Node>();
+        for (VirtualMachine vm : cfg.getRunnings()) {
+            initial.put(vm, cfg.getLocation(vm));
+        }
+        AlterationJournal j = new AlterationJournal(cfg);
+        ConstraintIndex idx = new ConstraintIndex(new ArrayList<VJob>());
+        ConfigurationAlterer.shuffle(j, idx, 20, new Random(1));
+        int sp = j.savepoint();
+        Assert.assertTrue(sp > 0);
+        ConfigurationAlterer.shuffle(j, idx, 20, new Random(2));
+        Assert.assertTrue(j.size() > sp);
+
+        //Discard the second batch only
+        Map<VirtualMachine, Node> first = new HashMap<VirtualMachine, Node>();
+        j.rollback(sp);
+        Assert.assertEquals(j.size(), sp);
+        for (VirtualMachine vm : cfg.getRunnings()) {
+            first.put(vm, cfg.getLocation(vm));
+        }
+        Assert.assertFalse(first.equals(initial));
+
+        j.rollback();
+        for (VirtualMachine vm : cfg.getRunnings()) {
+            Assert.assertEquals(cfg.getLocation(vm), initial.get(vm));
+            Assert.assertEquals(j.getCapacityIndex().getFreeCPU(cfg.getLocation(vm)), 3);
+        }
+        ConfigurationAlterer.shuffle(j, idx, 20, new Random(3));
+        j.commit();
+        Assert.assertEquals(j.size(), 0);
+        Map<VirtualMachine, Node> committed = new HashMap<VirtualMachine, Node>();
+        for (VirtualMachine vm : cfg.getRunnings()) {
+            committed.put(vm, cfg.getLocation(vm));
+        }
+        j.rollback();
+        for (VirtualMachine vm : cfg.getRunnings()) {
+            Assert.assertEquals(cfg.getLocation(vm), committed.get(vm));
+        }
+    }
+
+    private static Configuration makeLarge(List<VJob> vjobs) {
+        Configuration cfg = new SimpleConfiguration();
+        ManagedElementSet<VirtualMachine> spread = new SimpleManagedElementSet<VirtualMachine>();
+        for (int i = 0; i < 200; i++) {
+            Node n = new SimpleNode("N" + i, 2, 4, 4);
+            cfg.addOnline(n);
+            for (int x = 0; x < 2; x++) {
+                VirtualMachine vm = new SimpleVirtualMachine("VM" + i + "-" + x, 1, 1, 1);
+                cfg.setRunOn(vm, n);
+                if (x == 0 && i < 20) {
+                    spread.add(vm);
+                }
+            }
+        }
+        VJob v = new DefaultVJob("v");
+        v.addConstraint(new ContinuousSpread(spread));
+        vjobs.add(v);
+        return cfg;
+    }
+
+    public void testParallelShuffle() {
+        List<VJob> vjobs1 = new ArrayList<VJob>();
+        List<VJob> vjobs2 = new ArrayList<VJob>();
+        Configuration cfg1 = makeLarge(vjobs1);
+        Configuration cfg2 = makeLarge(vjobs2);
+        ConfigurationAlterer.parallelShuffle(new AlterationJournal(cfg1), new ConstraintIndex(vjobs1), 1000, 128, new Random(42));
+        ConfigurationAlterer.parallelShuffle(new AlterationJournal(cfg2), new ConstraintIndex(vjobs2), 1000, 128, new Random(42));
+        int moved = 0;
+        for (VirtualMachine vm : cfg1.getRunnings()) {
+            VirtualMachine other = cfg2.getAllVirtualMachines().get(vm.getName());
+            Assert.assertEquals(cfg2.getLocation(other).getName(), cfg1.getLocation(vm).getName());
+            //VMi-x was initially on Ni
+            if (!vm.getName().startsWith("VM" + cfg1.getLocation(vm).getName().substring(1) + "-")) {
+                moved++;
+            }
+        }
+        Assert.assertTrue(moved > 0);
+        Assert.assertEquals(cfg1.getRunnings().size(), 400);
+        Assert.assertTrue(Configurations.currentlyOverloadedNodes(cfg1).isEmpty());
+        Assert.assertTrue(GreedyPlacement.isViable(cfg1, vjobs1));
+    }
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.*;
+import entropy.vjob.*;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link ConfigurationFork}.
+ *
+ * @author Fabien Hermenier
+ */
+public class ConfigurationForkTest {
+
+    private static Configuration makeBase() {
+        Configuration cfg = new SimpleConfiguration();
+        for (int i = 0; i < 10; i++) {
+            Node n = new SimpleNode("N" + i, 4, 10, 10);
+            cfg.addOnline(n);
+            for (int j = 0; j < 3; j++) {
+                cfg.setRunOn(new SimpleVirtualMachine("VM" + i + "-" + j, 1, 1, 1), n);
+            }
+        }
+        cfg.addWaiting(new SimpleVirtualMachine("W", 1, 1, 1));
+        return cfg;
+    }
+
+    @Test
+    public void testCopyOnWrite() {
+        Configuration base = makeBase();
+        Node n0 = base.getOnlines().get("N0");
+        Node n1 = base.getOnlines().get("N1");
+        VirtualMachine vm = base.getRunnings(n0).get(0);
+        VirtualMachine w = base.getWaitings().get(0);
+
+        ConfigurationFork f = new ConfigurationFork(base);
+        Assert.assertTrue(f.setRunOn(vm, n1));
+        Assert.assertTrue(f.setRunOn(w, n0));
+        Assert.assertEquals(f.getNbChanges(), 2);
+        Assert.assertEquals(f.getLocation(vm), n1);
+        Assert.assertEquals(f.getRunnings(n1).size(), 4);
+        Assert.assertEquals(f.getRunnings(n0).size(), 3);
+        Assert.assertTrue(f.getWaitings().isEmpty());
+        //The base is untouched
+        Assert.assertEquals(base.getLocation(vm), n0);
+        Assert.assertTrue(base.isWaiting(w));
+
+        ConfigurationFork child = f.fork();
+        Assert.assertTrue(f.isFrozen());
+        Assert.assertEquals(child.getNbChanges(), 0);
+        Assert.assertTrue(child.remove(vm));
+        Assert.assertFalse(child.contains(vm));
+        Assert.assertTrue(f.contains(vm));
+        Assert.assertFalse(child.addOffline(n0));
+        for (VirtualMachine x : child.getRunnings(n0)) {
+            child.addWaiting(x);
+        }
+        Assert.assertTrue(child.addOffline(n0));
+        Assert.assertFalse(child.setRunOn(vm, n0));
+        Assert.assertEquals(child.getOnlines().size(), 9);
+        Assert.assertTrue(f.isOnline(n0));
+
+        Configuration cfg = child.toConfiguration();
+        Assert.assertEquals(cfg.getOnlines().size(), 9);
+        Assert.assertEquals(cfg.getOfflines().size(), 1);
+        Assert.assertEquals(cfg.getWaitings().size(), 3);
+        Assert.assertEquals(cfg.getRunnings().size(), 27);
+        Assert.assertFalse(cfg.getAllVirtualMachines().contains(vm));
+    }
+
+    @Test(expectedExceptions = {IllegalStateException.class})
+    public void testFrozenParent() {
+        Configuration base = makeBase();
+        ConfigurationFork f = new ConfigurationFork(base);
+        f.fork();
+        f.addWaiting(base.getRunnings().get(0));
+    }
+
+    @Test
+    public void testFailures() {
+        Configuration base = makeBase();
+        ConfigurationFork f = new ConfigurationFork(base);
+        ManagedElementSet<VirtualMachine> vms = ConfigurationAlterer.applyNodeFailureRatio(f, 0.3, new Random(1));
+        Assert.assertEquals(vms.size(), 9);
+        Assert.assertEquals(f.getOfflines().size(), 3);
+        Assert.assertEquals(base.getOfflines().size(), 0);
+        Assert.assertEquals(f.toConfiguration().getRunnings().size(), 21);
+    }
+
+    @Test
+    public void testDeepForks() {
+        Configuration base = makeBase();
+        Node n0 = base.getOnlines().get("N0");
+        Node n1 = base.getOnlines().get("N1");
+        Node n2 = base.getOnlines().get("N2");
+        VirtualMachine a = base.getRunnings(n0).get(0);
+        VirtualMachine b = base.getRunnings(n2).get(0);
+
+        ConfigurationFork f1 = new ConfigurationFork(base);
+        f1.setRunOn(a, n1);
+        ConfigurationFork f2 = f1.fork();
+        //Materialised in the frozen parent
+        Assert.assertEquals(f1.getRunnings(n1).size(), 4);
+        Assert.assertEquals(f1.getRunnings(n2).size(), 3);
+        f2.setRunOn(a, n2);
+        Assert.assertEquals(f2.getRunnings(n1).size(), 3);
+        Assert.assertEquals(f2.getRunnings(n2).size(), 4);
+        Assert.assertEquals(f1.getRunnings(n1).size(), 4);
+        Assert.assertEquals(f1.getRunnings(n2).size(), 3);
+
+        ConfigurationFork f3 = f2.fork();
+        f3.addWaiting(b);
+        Assert.assertEquals(f3.getWaitings().size(), 2);
+        Assert.assertEquals(f3.getRunnings(n2).size(), 3);
+        Assert.assertEquals(f2.getWaitings().size(), 1);
+        Assert.assertEquals(f3.getAllVirtualMachines().size(), 31);
+        Assert.assertEquals(f3.getOnlines().size(), 10);
+        //An empty fork sees the materialised sets of its parent
+        Assert.assertEquals(f2.fork().toConfiguration(), f2.toConfiguration());
+    }
+
+    @Test
+    public void testShuffle() {
+        Configuration base = makeBase();
+        Map<VirtualMachine, Node> before = new HashMap<VirtualMachine, Node>();
+        for (VirtualMachine vm : base.getRunnings()) {
+            before.put(vm, base.getLocation(vm));
+        }
+        ManagedElementSet<VirtualMachine> spread = new SimpleManagedElementSet<VirtualMachine>();
+        for (int i = 0; i < 3; i++) {
+            spread.add(base.getAllVirtualMachines().get("VM" + i + "-0"));
+        }
+        ManagedElementSet<VirtualMachine> fenced = new SimpleManagedElementSet<VirtualMachine>();
+        fenced.add(base.getAllVirtualMachines().get("VM3-0"));
+        ManagedElementSet<Node> ns = new SimpleManagedElementSet<Node>();
+        ns.add(base.getOnlines().get("N3"));
+        ns.add(base.getOnlines().get("N4"));
+        VJob v = new DefaultVJob("v");
+        v.addConstraint(new ContinuousSpread(spread));
+        v.addConstraint(new Fence(fenced, ns));
+        List<VJob> vjobs = new ArrayList<VJob>();
+        vjobs.add(v);
+
+        ConfigurationFork f = new ConfigurationFork(base);
+        ConfigurationAlterer.shuffle(f, new ConstraintIndex(vjobs), 50, new Random(3));
+        Assert.assertTrue(f.getNbChanges() > 0);
+        Configuration cfg = f.toConfiguration();
+        Assert.assertEquals(cfg.getRunnings().size(), 30);
+        Assert.assertTrue(Configurations.futureOverloadedNodes(cfg).isEmpty());
+        for (PlacementConstraint c : v.getConstraints()) {
+            Assert.assertTrue(c.isSatisfied(cfg));
+        }
+        //The base is untouched
+        for (Map.Entry<VirtualMachine, Node> e : before.entrySet()) {
+            Assert.assertEquals(base.getLocation(e.getKey()), e.getValue());
+        }
+    }
+
+    @Test
+    public void testRelocateUnsupported() {
+        Configuration base = makeBase();
+        VirtualMachine vm = base.getAllVirtualMachines().get("VM0-0");
+        ManagedElementSet<VirtualMachine> root = new SimpleManagedElementSet<VirtualMachine>();
+        root.add(vm);
+        ManagedElementSet<VirtualMachine> spread = new SimpleManagedElementSet<VirtualMachine>();
+        spread.add(vm);
+        for (int i = 1; i < 5; i++) {
+            spread.add(base.getAllVirtualMachines().get("VM" + i + "-0"));
+        }
+        VJob v = new DefaultVJob("v");
+        v.addConstraint(new Root(root));
+        v.addConstraint(new ContinuousSpread(spread));
+        List<VJob> vjobs = new ArrayList<VJob>();
+        vjobs.add(v);
+        ConstraintIndex idx = new ConstraintIndex(vjobs);
+        Assert.assertFalse(idx.getDeltaChecker().isSupported(vm));
+
+        //Checked on the flattened fork, as with a configuration
+        ConfigurationFork f = new ConfigurationFork(base);
+        Assert.assertTrue(ConfigurationAlterer.relocate(f, vm, idx, new CapacityIndex(f), 10, new Random(1)));
+        Assert.assertFalse(f.getLocation(vm).equals(base.getLocation(vm)));
+        Configuration cfg = f.toConfiguration();
+        for (PlacementConstraint c : v.getConstraints()) {
+            Assert.assertTrue(c.isSatisfied(cfg));
+        }
+    }
+}
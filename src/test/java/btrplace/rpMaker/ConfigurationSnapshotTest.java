@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.*;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for {@link ConfigurationSnapshot}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class ConfigurationSnapshotTest {
+
+    public void testSnapshot() {
+        Configuration cfg = new SimpleConfiguration();
+        for (int i = 0; i < 4; i++) {
+            Node n = new SimpleNode("N" + i, 1, 4, 4);
+            cfg.addOnline(n);
+            VirtualMachine vm = new SimpleVirtualMachine("VM" + i, 1, 2, 2);
+            vm.setCPUDemand(i + 2);
+            cfg.setRunOn(vm, n);
+        }
+        cfg.addOffline(new SimpleNode("N4", 1, 4, 4));
+        cfg.addWaiting(new SimpleVirtualMachine("VM4", 1, 2, 2));
+        ConfigurationSnapshot s = new ConfigurationSnapshot(cfg);
+        Assert.assertEquals(s.getNbNodes(), 5);
+        Assert.assertEquals(s.getNbVirtualMachines(), 5);
+        Assert.assertEquals(s.getNodeState(s.indexOf(cfg.getOfflines().get("N4"))), ConfigurationSnapshot.OFFLINE);
+        Assert.assertEquals(s.getHost(s.indexOf(cfg.getWaitings().get("VM4"))), -1);
+        Assert.assertEquals(s.getLoad(LoadReport.Resource.cpuConsumption), ConfigurationAlterer.getCPUConsumptionLoad(cfg));
+        Assert.assertEquals(s.getCurrentlyOverloadedNodes().length, 0);
+        //VM3 has a CPU demand of 5
+        int[] overloaded = s.getFutureOverloadedNodes();
+        Assert.assertEquals(overloaded.length, 1);
+        Assert.assertEquals(s.getNodeName(overloaded[0]), "N3");
+
+        int[] vms = s.indexesOf(cfg.getRunnings());
+        Assert.assertTrue(s.isSpread(vms));
+        Assert.assertFalse(s.isGathered(vms));
+        Assert.assertTrue(s.isLonely(vms));
+        Assert.assertTrue(s.isFenced(vms, new int[]{0, 1, 2, 3}));
+        Assert.assertFalse(s.isFenced(vms, new int[]{0, 1}));
+    }
+}
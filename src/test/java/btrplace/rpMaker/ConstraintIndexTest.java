@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.ManagedElementSet;
+import entropy.configuration.SimpleManagedElementSet;
+import entropy.configuration.SimpleVirtualMachine;
+import entropy.configuration.VirtualMachine;
+import entropy.vjob.*;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link ConstraintIndex}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class ConstraintIndexTest {
+
+    public void testIndexing() {
+        ManagedElementSet<VirtualMachine> vms = new SimpleManagedElementSet<VirtualMachine>();
+        for (int i = 0; i < 4; i++) {
+            vms.add(new SimpleVirtualMachine("VM" + i, 1, 1, 1));
+        }
+        ManagedElementSet<VirtualMachine> s1 = new SimpleManagedElementSet<VirtualMachine>();
+        s1.add(vms.get(0));
+        s1.add(vms.get(1));
+        Spread sp = new ContinuousSpread(s1);
+        ManagedElementSet<VirtualMachine> s2 = new SimpleManagedElementSet<VirtualMachine>();
+        s2.add(vms.get(2));
+        Lonely l = new Lonely(s2);
+        VJob v = new DefaultVJob("v");
+        v.addVirtualMachines(vms);
+        v.addConstraint(sp);
+        v.addConstraint(l);
+        List<VJob> vjobs = new ArrayList<VJob>();
+        vjobs.add(v);
+
+        ConstraintIndex idx = new ConstraintIndex(vjobs);
+        Assert.assertEquals(idx.getConstraints(vms.get(0)).size(), 1);
+        Assert.assertEquals(idx.getConstraints(vms.get(0)).get(0), sp);
+        Assert.assertTrue(idx.getConstraints(vms.get(2)).isEmpty());
+        Assert.assertTrue(idx.getConstraints(vms.get(3)).isEmpty());
+        Assert.assertEquals(idx.getNodeScopedConstraints().size(), 1);
+        Assert.assertEquals(idx.getNodeScopedConstraints().get(0), l);
+    }
+}
@@ -19,15 +19,13 @@
 
 package btrplace.rpMaker;
 
-import entropy.configuration.ManagedElementSet;
-import entropy.configuration.SimpleManagedElementSet;
-import entropy.configuration.SimpleVirtualMachine;
-import entropy.configuration.VirtualMachine;
-import entropy.vjob.DefaultVJob;
-import entropy.vjob.VJob;
+import entropy.configuration.*;
+import entropy.vjob.*;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.util.List;
+
 /**
  * @author Fabien Hermenier
  */
@@ -113,4 +111,147 @@ public class DefaultVJobTemplateTest {
 
         }
     }
+
+    public void testInstantiationWithConstraints() {
+        VJob v = createVJob();
+        VJobTemplate t = new DefaultVJobTemplate("t1", v);
+        ManagedElementSet<VirtualMachine> spread = new SimpleManagedElementSet<VirtualMachine>();
+        spread.add(v.getVirtualMachines().get("VM1"));
+        spread.add(v.getVirtualMachines().get("VM2"));
+        ManagedElementSet<Node> ns = new SimpleManagedElementSet<Node>();
+        ns.add(new SimpleNode("N1", 1, 1, 1));
+        t.addConstraint(new ContinuousSpread(spread));
+        t.addConstraint(new Fence(spread.clone(), ns));
+
+        VJob i = t.instantiate("v", "root.");
+        Assert.assertEquals(i.getConstraints().size(), 2);
+        for (PlacementConstraint c : i.getConstraints()) {
+            Assert.assertEquals(c.getAllVirtualMachines().size(), 2);
+            Assert.assertNotNull(c.getAllVirtualMachines().get("root.VM1"));
+            Assert.assertNotNull(c.getAllVirtualMachines().get("root.VM2"));
+            if (c instanceof Fence) {
+                Assert.assertEquals(c.getNodes(), ns);
+            } else {
+                Assert.assertTrue(c instanceof ContinuousSpread);
+            }
+        }
+    }
+
+    public void testUnsupportedConstraint() {
+        VJob v = createVJob();
+        VJobTemplate t = new DefaultVJobTemplate("t1", v);
+        ManagedElementSet<Node> ns = new SimpleManagedElementSet<Node>();
+        ns.add(new SimpleNode("N1", 1, 1, 1));
+        //A subclass would lose its behaviour once copied as its parent
+        t.addConstraint(new Fence(v.getVirtualMachines().clone(), ns) {
+        });
+        try {
+            t.instantiate("v", "root.");
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            //Expected
+        }
+    }
+
+    public void testBulkInstantiation() {
+        DefaultVJobTemplate t = new DefaultVJobTemplate("t1", createVJob());
+        List<VJob> instances = t.instantiate(100, "v%d", "r%d.");
+        Assert.assertEquals(instances.size(), 100);
+        for (int x = 0; x < instances.size(); x++) {
+            VJob i = instances.get(x);
+            Assert.assertEquals(i.id(), "v" + x);
+            Assert.assertEquals(i.getVirtualMachines().size(), 4);
+            Assert.assertNotNull(i.getVirtualMachines().get("r" + x + ".VM1"));
+        }
+    }
+
+    public void testCachedViews() {
+        VJobTemplate t = new DefaultVJobTemplate("t1", createVJob());
+        ManagedElementSet<VirtualMachine> vms = t.getVirtualMachines();
+        Assert.assertEquals(vms.size(), 4);
+        //The returned views are cached and read-only
+        Assert.assertSame(t.getVirtualMachines(), vms);
+        try {
+            vms.clear();
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            Assert.assertEquals(t.getVirtualMachines().size(), 4);
+        }
+        try {
+            t.getNodes().add(new SimpleNode("N0", 1, 1, 1));
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+            Assert.assertTrue(t.getNodes().isEmpty());
+        }
+        ManagedElementSet<VirtualMachine> cpy = vms.clone();
+        cpy.clear();
+        Assert.assertEquals(vms.size(), 4);
+        ManagedElementSet<VirtualMachine> s = new SimpleManagedElementSet<VirtualMachine>();
+        s.add(new SimpleVirtualMachine("VM5", 1, 1, 1));
+        ManagedElementSet<Node> ns = new SimpleManagedElementSet<Node>();
+        ns.add(new SimpleNode("N1", 1, 1, 1));
+        PlacementConstraint c = new Fence(s, ns);
+        Assert.assertTrue(t.addConstraint(c));
+        Assert.assertEquals(t.getVirtualMachines().size(), 5);
+        Assert.assertEquals(t.getNodes().size(), 1);
+        Assert.assertTrue(t.removeConstraint(c));
+        Assert.assertEquals(t.getVirtualMachines().size(), 4);
+        Assert.assertTrue(t.getNodes().isEmpty());
+        Assert.assertTrue(t.addVirtualMachine(new SimpleVirtualMachine("VM6", 1, 1, 1)));
+        Assert.assertEquals(t.getVirtualMachines().size(), 5);
+    }
+
+    public void testLeanInstantiation() {
+        VJob v = createVJob();
+        DefaultVJobTemplate t = new DefaultVJobTemplate("t1", v);
+        t.setLean(true);
+        List<VJob> instances = t.instantiate(2, "v%d", "r%d.");
+        StampedVirtualMachine vm0 = (StampedVirtualMachine) instances.get(0).getVirtualMachines().get("r0.VM1");
+        StampedVirtualMachine vm1 = (StampedVirtualMachine) instances.get(1).getVirtualMachines().get("r1.VM1");
+        Assert.assertSame(vm0.getProfile(), vm1.getProfile());
+        VirtualMachine src = v.getVirtualMachines().get("VM1");
+        Assert.assertEquals(vm0.getCPUDemand(), src.getCPUDemand());
+        Assert.assertEquals(vm0.getCPUMax(), src.getCPUMax());
+        Assert.assertEquals(vm0.getMemoryDemand(), src.getMemoryDemand());
+        Assert.assertEquals(vm0.getTemplate(), src.getTemplate());
+        Assert.assertEquals(vm0.getOptions(), src.getOptions());
+
+        //Copy on write
+        VJobAlterer.setCPUDemandRatio(instances.get(0), 0.5);
+        Assert.assertNotSame(vm0.getProfile(), vm1.getProfile());
+        Assert.assertEquals(vm0.getCPUDemand(), 17);
+        Assert.assertEquals(vm1.getCPUDemand(), src.getCPUDemand());
+
+        //The own profile is only copied once
+        ResourceProfile own = vm0.getProfile();
+        vm0.setMemoryDemand(3);
+        vm0.setNbOfCPUs(2);
+        Assert.assertSame(vm0.getProfile(), own);
+        Assert.assertEquals(vm0.getNbOfCPUs(), 2);
+        Assert.assertEquals(vm1.getMemoryDemand(), src.getMemoryDemand());
+
+        //A clone shares the profile until one of them is modified
+        StampedVirtualMachine cpy = vm0.clone();
+        Assert.assertSame(cpy.getProfile(), own);
+        vm0.setCPUDemand(1);
+        Assert.assertEquals(cpy.getCPUDemand(), 17);
+        Assert.assertEquals(cpy, vm0);
+    }
+
+    public void testStampedEquality() {
+        ResourceProfile p = ResourceProfile.of(new SimpleVirtualMachine("VM1", 1, 1, 1));
+        StampedVirtualMachine vm = new StampedVirtualMachine("r0.", "VM1", p);
+        StampedVirtualMachine same = new StampedVirtualMachine("r0.VM1", p);
+        Assert.assertEquals(vm.getName(), "r0.VM1");
+        Assert.assertEquals(vm, same);
+        Assert.assertEquals(same, vm);
+        Assert.assertEquals(vm.hashCode(), same.hashCode());
+        //Never equal to a VM of another class, whatever the direction
+        VirtualMachine other = new SimpleVirtualMachine("r0.VM1", 1, 1, 1);
+        Assert.assertFalse(vm.equals(other));
+        Assert.assertFalse(other.equals(vm));
+        vm.rename("foo");
+        Assert.assertEquals(vm.getName(), "foo");
+        Assert.assertEquals(vm.clone().getName(), "foo");
+    }
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.*;
+import entropy.vjob.*;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link DeltaChecker}.
+ *
+ * @author Fabien Hermenier
+ */
+public class DeltaCheckerTest {
+
+    private static ManagedElementSet<VirtualMachine> set(VirtualMachine... vms) {
+        ManagedElementSet<VirtualMachine> s = new SimpleManagedElementSet<VirtualMachine>();
+        for (VirtualMachine vm : vms) {
+            s.add(vm);
+        }
+        return s;
+    }
+
+    @Test
+    public void testConsistentWithFullCheck() {
+        Configuration cfg = new SimpleConfiguration();
+        Node[] ns = new Node[6];
+        for (int i = 0; i < ns.length; i++) {
+            ns[i] = new SimpleNode("N" + i, 4, 10, 10);
+            cfg.addOnline(ns[i]);
+        }
+        VirtualMachine[] vms = new VirtualMachine[10];
+        for (int i = 0; i < vms.length; i++) {
+            vms[i] = new SimpleVirtualMachine("VM" + i, 1, 1, 1);
+        }
+        int[] hosts = {0, 1, 2, 3, 3, 0, 2, 1, 1, 4};
+        for (int i = 0; i < vms.length; i++) {
+            cfg.setRunOn(vms[i], ns[hosts[i]]);
+        }
+        ManagedElementSet<Node> fenced = new SimpleManagedElementSet<Node>();
+        fenced.add(ns[0]);
+        fenced.add(ns[1]);
+        fenced.add(ns[2]);
+        ManagedElementSet<Node> banned = new SimpleManagedElementSet<Node>();
+        banned.add(ns[3]);
+        VJob v = new DefaultVJob("v");
+        v.addConstraint(new Fence(set(vms[0], vms[1]), fenced));
+        v.addConstraint(new Ban(set(vms[2]), banned));
+        v.addConstraint(new Lonely(set(vms[3], vms[4])));
+        v.addConstraint(new ContinuousSpread(set(vms[5], vms[6])));
+        v.addConstraint(new Gather(set(vms[7], vms[8])));
+        List<VJob> vjobs = new ArrayList<VJob>();
+        vjobs.add(v);
+        Assert.assertTrue(GreedyPlacement.isViable(cfg, vjobs));
+
+        checkAllMoves(cfg, v, vms, ns);
+    }
+
+    /**
+     * Compare the checker with a full check for every possible move.
+     */
+    private static void checkAllMoves(Configuration cfg, VJob v, VirtualMachine[] vms, Node[] ns) {
+        List<VJob> vjobs = new ArrayList<VJob>();
+        vjobs.add(v);
+        DeltaChecker dc = new ConstraintIndex(vjobs).getDeltaChecker();
+        for (VirtualMachine vm : vms) {
+            Assert.assertTrue(dc.isSupported(vm));
+            Node from = cfg.getLocation(vm);
+            for (Node to : ns) {
+                if (to == from) {
+                    continue;
+                }
+                boolean expected = true;
+                cfg.setRunOn(vm, to);
+                for (PlacementConstraint c : v.getConstraints()) {
+                    expected &= c.isSatisfied(cfg);
+                }
+                cfg.setRunOn(vm, from);
+                Assert.assertEquals(dc.accept(cfg, vm, to), expected, vm.getName() + " -> " + to.getName());
+            }
+        }
+    }
+
+    @Test
+    public void testOverlappingLonelies() {
+        Configuration cfg = new SimpleConfiguration();
+        Node[] ns = new Node[5];
+        for (int i = 0; i < ns.length; i++) {
+            ns[i] = new SimpleNode("N" + i, 4, 10, 10);
+            cfg.addOnline(ns[i]);
+        }
+        VirtualMachine[] vms = new VirtualMachine[5];
+        for (int i = 0; i < vms.length; i++) {
+            vms[i] = new SimpleVirtualMachine("VM" + i, 1, 1, 1);
+        }
+        //VM0 and VM1 are in both constraints, VM4 in none
+        int[] hosts = {0, 0, 1, 2, 3};
+        for (int i = 0; i < vms.length; i++) {
+            cfg.setRunOn(vms[i], ns[hosts[i]]);
+        }
+        VJob v = new DefaultVJob("v");
+        v.addConstraint(new Lonely(set(vms[0], vms[1], vms[2])));
+        v.addConstraint(new Lonely(set(vms[0], vms[1], vms[3])));
+        List<VJob> vjobs = new ArrayList<VJob>();
+        vjobs.add(v);
+        Assert.assertTrue(GreedyPlacement.isViable(cfg, vjobs));
+        checkAllMoves(cfg, v, vms, ns);
+    }
+
+    @Test
+    public void testUnsupported() {
+        VirtualMachine vm1 = new SimpleVirtualMachine("VM1", 1, 1, 1);
+        VirtualMachine vm2 = new SimpleVirtualMachine("VM2", 1, 1, 1);
+        VJob v = new DefaultVJob("v");
+        v.addConstraint(new Root(set(vm1)));
+        v.addConstraint(new ContinuousSpread(set(vm2)));
+        List<VJob> vjobs = new ArrayList<VJob>();
+        vjobs.add(v);
+        DeltaChecker dc = new ConstraintIndex(vjobs).getDeltaChecker();
+        Assert.assertFalse(dc.isSupported(vm1));
+        Assert.assertTrue(dc.isSupported(vm2));
+        Assert.assertFalse(DeltaChecker.isSupported(new Root(set(vm1))));
+    }
+}
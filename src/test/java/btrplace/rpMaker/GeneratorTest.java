@@ -20,16 +20,20 @@
 package btrplace.rpMaker;
 
 import entropy.configuration.*;
+import entropy.plan.Plan;
 import entropy.plan.choco.ChocoCustomRP;
 import entropy.plan.choco.constraint.pack.SatisfyDemandingSlicesHeightsFastBP;
 import entropy.plan.durationEvaluator.MockDurationEvaluator;
 import entropy.vjob.DefaultVJob;
+import entropy.vjob.Fence;
+import entropy.vjob.PlacementConstraint;
 import entropy.vjob.VJob;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Fabien Hermenier
@@ -70,4 +74,273 @@ public class GeneratorTest {
         Assert.assertEquals(cfg.getOnlines().size(), 20);
         Assert.assertEquals(cfg.getOfflines().size(), 10);
     }
+
+    @Test
+    public void testBatch() throws InterruptedException {
+        List<InstanceSpec> specs = new ArrayList<InstanceSpec>();
+        for (int x = 0; x < 8; x++) {
+            ManagedElementSet<Node> onlines = new SimpleManagedElementSet<Node>();
+            for (int i = 0; i < 10; i++) {
+                onlines.add(new SimpleNode("N" + i, 5, 5, 5));
+            }
+            VJob v = new DefaultVJob("foo");
+            //Too many VMs for the last specification
+            int nbVMs = x == 7 ? 60 : 20;
+            for (int i = 0; i < nbVMs; i++) {
+                v.addVirtualMachine(new SimpleVirtualMachine("VM" + i, 1, 1, 2));
+            }
+            List<VJob> vjobs = new ArrayList<VJob>();
+            vjobs.add(v);
+            specs.add(new InstanceSpec(onlines, new SimpleManagedElementSet<Node>(), vjobs));
+        }
+        PlanFactory f = new PlanFactory() {
+            @Override
+            public Plan build() {
+                ChocoCustomRP rp = new ChocoCustomRP(new MockDurationEvaluator(1, 1, 1, 1, 1, 1, 1, 1, 1));
+                rp.setPackingConstraintClass(new SatisfyDemandingSlicesHeightsFastBP());
+                return rp;
+            }
+        };
+        final List<GenerationResult> results = new ArrayList<GenerationResult>();
+        Generator.generate(f, specs, 3, new GenerationListener() {
+            @Override
+            public void generated(GenerationResult res) {
+                results.add(res);
+            }
+        });
+        Assert.assertEquals(results.size(), 8);
+        for (GenerationResult res : results) {
+            if (res.getIndex() == 7) {
+                Assert.assertFalse(res.isSuccessful());
+            } else {
+                Assert.assertTrue(res.isSuccessful());
+                Assert.assertEquals(res.getConfiguration().getRunnings().size(), 20);
+            }
+        }
+    }
+
+    @Test
+    public void testPortfolio() throws InterruptedException {
+        ManagedElementSet<Node> onlines = new SimpleManagedElementSet<Node>();
+        for (int i = 0; i < 10; i++) {
+            onlines.add(new SimpleNode("N" + i, 5, 5, 5));
+        }
+        VJob v = new DefaultVJob("foo");
+        for (int i = 0; i < 20; i++) {
+            v.addVirtualMachine(new SimpleVirtualMachine("VM" + i, 1, 2, 1));
+        }
+        List<VJob> vjobs = new ArrayList<VJob>();
+        vjobs.add(v);
+        List<Plan> portfolio = new ArrayList<Plan>();
+        for (int i = 0; i < 2; i++) {
+            ChocoCustomRP rp = new ChocoCustomRP(new MockDurationEvaluator(1, 1, 1, 1, 1, 1, 1, 1, 1));
+            rp.setPackingConstraintClass(new SatisfyDemandingSlicesHeightsFastBP());
+            portfolio.add(rp);
+        }
+        Configuration cfg = Generator.portfolioGenerate(portfolio, onlines, new SimpleManagedElementSet<Node>(), vjobs, 1, TimeUnit.MINUTES);
+        Assert.assertNotNull(cfg);
+        Assert.assertEquals(cfg.getRunnings().size(), 20);
+    }
+
+    @Test
+    public void testDecomposition() throws InterruptedException {
+        ManagedElementSet<Node> onlines = new SimpleManagedElementSet<Node>();
+        for (int i = 0; i < 12; i++) {
+            onlines.add(new SimpleNode("N" + i, 5, 5, 5));
+        }
+        List<VJob> vjobs = new ArrayList<VJob>();
+        //Three partitions of 4 nodes each
+        for (int x = 0; x < 3; x++) {
+            VJob v = new DefaultVJob("v" + x);
+            for (int i = 0; i < 8; i++) {
+                v.addVirtualMachine(new SimpleVirtualMachine("VM" + x + "-" + i, 1, 1, 2));
+            }
+            ManagedElementSet<Node> ns = new SimpleManagedElementSet<Node>();
+            for (int i = 0; i < 4; i++) {
+                ns.add(onlines.get(x * 4 + i));
+            }
+            v.addConstraint(new Fence(v.getVirtualMachines(), ns));
+            vjobs.add(v);
+        }
+        List<InstanceSpec> parts = Decomposer.decompose(onlines, vjobs);
+        Assert.assertEquals(parts.size(), 3);
+        for (InstanceSpec s : parts) {
+            Assert.assertEquals(s.getOnlines().size(), 4);
+            Assert.assertEquals(s.getVJobs().size(), 1);
+        }
+
+        //An unfenced vjob merges everything
+        VJob free = new DefaultVJob("free");
+        free.addVirtualMachine(new SimpleVirtualMachine("VMfree", 1, 1, 1));
+        vjobs.add(free);
+        Assert.assertEquals(Decomposer.decompose(onlines, vjobs).size(), 1);
+        vjobs.remove(free);
+
+        PlanFactory f = new PlanFactory() {
+            @Override
+            public Plan build() {
+                ChocoCustomRP rp = new ChocoCustomRP(new MockDurationEvaluator(1, 1, 1, 1, 1, 1, 1, 1, 1));
+                rp.setPackingConstraintClass(new SatisfyDemandingSlicesHeightsFastBP());
+                return rp;
+            }
+        };
+        Configuration cfg = Generator.decomposedGenerate(f, onlines, new SimpleManagedElementSet<Node>(), vjobs, 3);
+        Assert.assertNotNull(cfg);
+        Assert.assertEquals(cfg.getRunnings().size(), 24);
+        Assert.assertEquals(cfg.getOnlines().size(), 12);
+        for (VJob v : vjobs) {
+            for (PlacementConstraint c : v.getConstraints()) {
+                Assert.assertTrue(c.isSatisfied(cfg));
+            }
+        }
+    }
+
+    @Test
+    public void testRelaxation() {
+        ChocoCustomRP rp = new ChocoCustomRP(new MockDurationEvaluator(1, 1, 1, 1, 1, 1, 1, 1, 1));
+        rp.setPackingConstraintClass(new SatisfyDemandingSlicesHeightsFastBP());
+        ManagedElementSet<Node> onlines = new SimpleManagedElementSet<Node>();
+        ManagedElementSet<Node> offlines = new SimpleManagedElementSet<Node>();
+        for (int i = 0; i < 40; i++) {
+            Node n = new SimpleNode("N" + i, 5, 5, 5);
+            if (i < 10) {
+                onlines.add(n);
+            } else {
+                offlines.add(n);
+            }
+        }
+        List<VJob> vjobs = new ArrayList<VJob>();
+        for (int x = 0; x < 3; x++) {
+            VJob v = new DefaultVJob("v" + x);
+            for (int i = 0; i < 20; i++) {
+                v.addVirtualMachine(new SimpleVirtualMachine("VM" + x + "-" + i, 1, 1, 2));
+            }
+            vjobs.add(v);
+        }
+        //Not enough memory on the online nodes
+        InstanceSpec spec = new InstanceSpec(onlines.clone(), offlines.clone(), vjobs);
+        Assert.assertNull(Generator.relaxedGenerate(rp, spec, new NodeBooting(10), 1));
+
+        spec = new InstanceSpec(onlines, offlines, vjobs);
+        Configuration cfg = Generator.relaxedGenerate(rp, spec, new NodeBooting(10), 5);
+        Assert.assertNotNull(cfg);
+        Assert.assertEquals(cfg.getRunnings().size(), 60);
+        Assert.assertTrue(spec.getOnlines().size() >= 30);
+
+        onlines = new SimpleManagedElementSet<Node>();
+        for (int i = 0; i < 10; i++) {
+            onlines.add(new SimpleNode("N" + i, 5, 5, 5));
+        }
+        spec = new InstanceSpec(onlines, new SimpleManagedElementSet<Node>(), new ArrayList<VJob>(vjobs));
+        cfg = Generator.relaxedGenerate(rp, spec, new RelaxationChain(new NodeBooting(1), new VJobDropping()), 5);
+        Assert.assertNotNull(cfg);
+        Assert.assertEquals(spec.getVJobs().size(), 1);
+        Assert.assertEquals(cfg.getRunnings().size(), 20);
+    }
+
+    @Test
+    public void testIncremental() {
+        ChocoCustomRP rp = new ChocoCustomRP(new MockDurationEvaluator(1, 1, 1, 1, 1, 1, 1, 1, 1));
+        rp.setPackingConstraintClass(new SatisfyDemandingSlicesHeightsFastBP());
+        ManagedElementSet<Node> onlines = new SimpleManagedElementSet<Node>();
+        for (int i = 0; i < 10; i++) {
+            onlines.add(new SimpleNode("N" + i, 5, 5, 5));
+        }
+        VJob v = new DefaultVJob("foo");
+        for (int i = 0; i < 20; i++) {
+            v.addVirtualMachine(new SimpleVirtualMachine("VM" + i, 1, 1, 2));
+        }
+        List<VJob> vjobs = new ArrayList<VJob>();
+        vjobs.add(v);
+        Configuration prev = Generator.generate(rp, onlines, new SimpleManagedElementSet<Node>(), vjobs);
+        Assert.assertNotNull(prev);
+
+        //N0 fails, 2 new nodes and a new vjob
+        ManagedElementSet<Node> offlines = new SimpleManagedElementSet<Node>();
+        Node n0 = onlines.get(0);
+        onlines.remove(n0);
+        offlines.add(n0);
+        onlines.add(new SimpleNode("N10", 5, 5, 5));
+        onlines.add(new SimpleNode("N11", 5, 5, 5));
+        VJob bar = new DefaultVJob("bar");
+        bar.addVirtualMachine(new SimpleVirtualMachine("VM20", 1, 1, 2));
+        bar.addVirtualMachine(new SimpleVirtualMachine("VM21", 1, 1, 2));
+        vjobs.add(bar);
+
+        Configuration cfg = Generator.incrementalGenerate(rp, prev, onlines, offlines, vjobs);
+        Assert.assertNotNull(cfg);
+        Assert.assertEquals(cfg.getRunnings().size(), 22);
+        Assert.assertTrue(cfg.isOffline(n0));
+        for (VirtualMachine vm : v.getVirtualMachines()) {
+            if (prev.getLocation(vm) != n0) {
+                Assert.assertEquals(cfg.getLocation(vm), prev.getLocation(vm));
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalOnOverloadedNode() {
+        ChocoCustomRP rp = new ChocoCustomRP(new MockDurationEvaluator(1, 1, 1, 1, 1, 1, 1, 1, 1));
+        rp.setPackingConstraintClass(new SatisfyDemandingSlicesHeightsFastBP());
+        ManagedElementSet<Node> onlines = new SimpleManagedElementSet<Node>();
+        for (int i = 0; i < 2; i++) {
+            onlines.add(new SimpleNode("N" + i, 5, 5, 5));
+        }
+        Configuration prev = new SimpleConfiguration();
+        for (Node n : onlines) {
+            prev.addOnline(n);
+        }
+        VJob v = new DefaultVJob("foo");
+        for (int i = 0; i < 3; i++) {
+            VirtualMachine vm = new SimpleVirtualMachine("VM" + i, 1, 1, 1);
+            v.addVirtualMachine(vm);
+            prev.setRunOn(vm, onlines.get(0));
+        }
+        //N0 is now overloaded by VM0 only
+        v.getVirtualMachines().get("VM0").setCPUDemand(4);
+        List<VJob> vjobs = new ArrayList<VJob>();
+        vjobs.add(v);
+
+        Configuration cfg = Generator.incrementalGenerate(rp, prev, onlines, new SimpleManagedElementSet<Node>(), vjobs);
+        Assert.assertNotNull(cfg);
+        Assert.assertEquals(cfg.getLocation(v.getVirtualMachines().get("VM0")), onlines.get(1));
+        Assert.assertEquals(cfg.getLocation(v.getVirtualMachines().get("VM1")), onlines.get(0));
+        Assert.assertEquals(cfg.getLocation(v.getVirtualMachines().get("VM2")), onlines.get(0));
+    }
+
+    @Test
+    public void testBoundedGeneration() throws InterruptedException {
+        ChocoCustomRP rp = new ChocoCustomRP(new MockDurationEvaluator(1, 1, 1, 1, 1, 1, 1, 1, 1));
+        rp.setPackingConstraintClass(new SatisfyDemandingSlicesHeightsFastBP());
+        ManagedElementSet<Node> onlines = new SimpleManagedElementSet<Node>();
+        for (int i = 0; i < 10; i++) {
+            onlines.add(new SimpleNode("N" + i, 5, 5, 5));
+        }
+        VJob v = new DefaultVJob("foo");
+        for (int i = 0; i < 20; i++) {
+            v.addVirtualMachine(new SimpleVirtualMachine("VM" + i, 1, 1, 2));
+        }
+        List<VJob> vjobs = new ArrayList<VJob>();
+        vjobs.add(v);
+        BoundedResult res = Generator.boundedGenerate(rp, onlines, new SimpleManagedElementSet<Node>(), vjobs, 1, TimeUnit.MINUTES);
+        Assert.assertEquals(res.getStatus(), BoundedResult.Status.feasible);
+        Assert.assertEquals(res.getConfiguration().getRunnings().size(), 20);
+
+        //Only room for 20 VMs
+        for (int i = 20; i < 30; i++) {
+            v.addVirtualMachine(new SimpleVirtualMachine("VM" + i, 1, 1, 2));
+        }
+        res = Generator.boundedGenerate(rp, onlines, new SimpleManagedElementSet<Node>(), vjobs, 5, TimeUnit.SECONDS);
+        Assert.assertEquals(res.getStatus(), BoundedResult.Status.partial);
+        Assert.assertEquals(res.getConfiguration().getRunnings().size(), 20);
+        Assert.assertEquals(res.getUnplaced().size(), 10);
+        Assert.assertTrue(Configurations.futureOverloadedNodes(res.getConfiguration()).isEmpty());
+
+        //A sub-second budget is not rounded up to the time limit of the solver
+        long start = System.currentTimeMillis();
+        res = Generator.boundedGenerate(rp, onlines, new SimpleManagedElementSet<Node>(), vjobs, 10, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+        Assert.assertEquals(res.getStatus(), BoundedResult.Status.partial);
+        Assert.assertEquals(res.getConfiguration().getRunnings().size(), 20);
+    }
 }
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.*;
+import entropy.vjob.*;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link GreedyPlacement}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class GreedyPlacementTest {
+
+    public void testPlacementWithConstraints() {
+        Configuration cfg = new SimpleConfiguration();
+        for (int i = 0; i < 10; i++) {
+            cfg.addOnline(new SimpleNode("N" + i, 4, 4, 4));
+        }
+        ManagedElementSet<VirtualMachine> vms = new SimpleManagedElementSet<VirtualMachine>();
+        for (int i = 0; i < 20; i++) {
+            VirtualMachine vm = new SimpleVirtualMachine("VM" + i, 1, 1, 1);
+            cfg.addWaiting(vm);
+            vms.add(vm);
+        }
+        VJob v = new DefaultVJob("v");
+        v.addVirtualMachines(vms);
+        ManagedElementSet<Node> domain = new SimpleManagedElementSet<Node>();
+        domain.add(cfg.getOnlines().get("N0"));
+        domain.add(cfg.getOnlines().get("N1"));
+        ManagedElementSet<VirtualMachine> fenced = new SimpleManagedElementSet<VirtualMachine>();
+        fenced.add(vms.get("VM0"));
+        fenced.add(vms.get("VM1"));
+        v.addConstraint(new Fence(fenced, domain));
+        ManagedElementSet<VirtualMachine> spread = new SimpleManagedElementSet<VirtualMachine>();
+        for (int i = 2; i < 8; i++) {
+            spread.add(vms.get("VM" + i));
+        }
+        v.addConstraint(new ContinuousSpread(spread));
+        ManagedElementSet<VirtualMachine> lonely = new SimpleManagedElementSet<VirtualMachine>();
+        lonely.add(vms.get("VM8"));
+        lonely.add(vms.get("VM9"));
+        v.addConstraint(new Lonely(lonely));
+        List<VJob> vjobs = new ArrayList<VJob>();
+        vjobs.add(v);
+
+        Assert.assertTrue(GreedyPlacement.place(cfg, vms, vjobs).isEmpty());
+        Assert.assertEquals(cfg.getRunnings().size(), 20);
+        Assert.assertTrue(GreedyPlacement.isViable(cfg, vjobs));
+    }
+
+    public void testNotEnoughResources() {
+        Configuration cfg = new SimpleConfiguration();
+        cfg.addOnline(new SimpleNode("N0", 2, 2, 2));
+        ManagedElementSet<VirtualMachine> vms = new SimpleManagedElementSet<VirtualMachine>();
+        for (int i = 0; i < 3; i++) {
+            VirtualMachine vm = new SimpleVirtualMachine("VM" + i, 1, 1, 1);
+            cfg.addWaiting(vm);
+            vms.add(vm);
+        }
+        ManagedElementSet<VirtualMachine> unplaced = GreedyPlacement.place(cfg, vms, new ArrayList<VJob>());
+        Assert.assertEquals(unplaced.size(), 1);
+        Assert.assertTrue(cfg.isWaiting(unplaced.get(0)));
+        Assert.assertEquals(cfg.getRunnings().size(), 2);
+    }
+
+    public void testOverlappingLonelies() {
+        Configuration cfg = new SimpleConfiguration();
+        for (int i = 0; i < 4; i++) {
+            cfg.addOnline(new SimpleNode("N" + i, 4, 4, 4));
+        }
+        ManagedElementSet<VirtualMachine> vms = new SimpleManagedElementSet<VirtualMachine>();
+        for (int i = 0; i < 4; i++) {
+            VirtualMachine vm = new SimpleVirtualMachine("VM" + i, 1, 1, 1);
+            cfg.addWaiting(vm);
+            vms.add(vm);
+        }
+        //VM0 is in both constraints so it cannot share its node with VM1 or VM2
+        VJob v = new DefaultVJob("v");
+        v.addVirtualMachines(vms);
+        ManagedElementSet<VirtualMachine> l1 = new SimpleManagedElementSet<VirtualMachine>();
+        l1.add(vms.get("VM0"));
+        l1.add(vms.get("VM1"));
+        v.addConstraint(new Lonely(l1));
+        ManagedElementSet<VirtualMachine> l2 = new SimpleManagedElementSet<VirtualMachine>();
+        l2.add(vms.get("VM0"));
+        l2.add(vms.get("VM2"));
+        v.addConstraint(new Lonely(l2));
+        List<VJob> vjobs = new ArrayList<VJob>();
+        vjobs.add(v);
+
+        Assert.assertTrue(GreedyPlacement.place(cfg, vms, vjobs).isEmpty());
+        Assert.assertEquals(cfg.getRunnings().size(), 4);
+        Assert.assertTrue(GreedyPlacement.isViable(cfg, vjobs));
+        Node n0 = cfg.getLocation(vms.get("VM0"));
+        Assert.assertEquals(cfg.getRunnings(n0).size(), 1);
+    }
+
+    public void testOverlappingGathers() {
+        Configuration cfg = new SimpleConfiguration();
+        for (int i = 0; i < 4; i++) {
+            cfg.addOnline(new SimpleNode("N" + i, 4, 4, 4));
+        }
+        ManagedElementSet<VirtualMachine> vms = new SimpleManagedElementSet<VirtualMachine>();
+        for (int i = 0; i < 3; i++) {
+            VirtualMachine vm = new SimpleVirtualMachine("VM" + i, 1, 1, 1);
+            cfg.addWaiting(vm);
+            vms.add(vm);
+        }
+        //VM1 is in both constraints so the three VMs must be on the same node
+        VJob v = new DefaultVJob("v");
+        v.addVirtualMachines(vms);
+        ManagedElementSet<VirtualMachine> g1 = new SimpleManagedElementSet<VirtualMachine>();
+        g1.add(vms.get("VM0"));
+        g1.add(vms.get("VM1"));
+        v.addConstraint(new Gather(g1));
+        ManagedElementSet<VirtualMachine> g2 = new SimpleManagedElementSet<VirtualMachine>();
+        g2.add(vms.get("VM1"));
+        g2.add(vms.get("VM2"));
+        v.addConstraint(new Gather(g2));
+        List<VJob> vjobs = new ArrayList<VJob>();
+        vjobs.add(v);
+
+        Assert.assertTrue(GreedyPlacement.place(cfg, vms, vjobs).isEmpty());
+        Assert.assertTrue(GreedyPlacement.isViable(cfg, vjobs));
+        Node n = cfg.getLocation(vms.get("VM0"));
+        Assert.assertEquals(cfg.getRunnings(n).size(), 3);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.*;
+import entropy.vjob.*;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for {@link InstanceWriter}, {@link InstanceReader} and their binary counterparts.
+ *
+ * @author Fabien Hermenier
+ */
+@Test
+public class InstanceWriterTest {
+
+    private static Instance makeInstance() {
+        Configuration cfg = new SimpleConfiguration();
+        VJob v = new DefaultVJob("v1");
+        for (int i = 0; i < 5; i++) {
+            Node n = new SimpleNode("N" + i, 2, 10, 20);
+            cfg.addOnline(n);
+            VirtualMachine vm = new SimpleVirtualMachine("VM" + i, 1, 2, 3);
+            vm.setCPUDemand(4);
+            vm.setCPUMax(5);
+            vm.setMemoryDemand(6);
+            cfg.setRunOn(vm, n);
+            v.addVirtualMachine(vm);
+        }
+        VirtualMachine sleeping = new SimpleVirtualMachine("VM5", 1, 1, 1);
+        cfg.setSleepOn(sleeping, cfg.getOnlines().get(0));
+        cfg.addWaiting(new SimpleVirtualMachine("VM6", 1, 1, 1));
+        cfg.addOffline(new SimpleNode("N5", 2, 10, 20));
+        ManagedElementSet<Node> ns = new SimpleManagedElementSet<Node>();
+        ns.add(cfg.getOnlines().get("N1"));
+        ns.add(cfg.getOnlines().get("N2"));
+        v.addConstraint(new Fence(cfg.getRunnings().clone(), cfg.getOnlines().clone()));
+        v.addConstraint(new Ban(cfg.getSleepings().clone(), ns));
+        List<VJob> vjobs = new ArrayList<VJob>();
+        vjobs.add(v);
+        return new Instance(cfg, vjobs);
+    }
+
+    private static void check(Instance src, Instance res) {
+        Configuration cfg = res.getConfiguration();
+        Assert.assertEquals(cfg, src.getConfiguration());
+        for (VirtualMachine vm : src.getConfiguration().getAllVirtualMachines()) {
+            VirtualMachine x = cfg.getAllVirtualMachines().get(vm.getName());
+            Assert.assertEquals(x.getCPUConsumption(), vm.getCPUConsumption());
+            Assert.assertEquals(x.getCPUDemand(), vm.getCPUDemand());
+            Assert.assertEquals(x.getCPUMax(), vm.getCPUMax());
+            Assert.assertEquals(x.getMemoryConsumption(), vm.getMemoryConsumption());
+            Assert.assertEquals(x.getMemoryDemand(), vm.getMemoryDemand());
+        }
+        Assert.assertEquals(res.getVJobs().size(), 1);
+        VJob v = res.getVJobs().get(0);
+        Assert.assertEquals(v.id(), "v1");
+        Assert.assertEquals(v.getVirtualMachines(), src.getVJobs().get(0).getVirtualMachines());
+        Assert.assertEquals(v.getConstraints().size(), 2);
+        for (PlacementConstraint c : v.getConstraints()) {
+            Assert.assertTrue(c.isSatisfied(cfg));
+        }
+    }
+
+    public void testRoundTrip() throws IOException {
+        for (boolean compress : new boolean[]{false, true}) {
+            Instance src = makeInstance();
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            InstanceWriter w = new InstanceWriter(bout, compress);
+            w.write(src);
+            w.write(src);
+            w.close();
+
+            InstanceReader r = new InstanceReader(new ByteArrayInputStream(bout.toByteArray()), compress);
+            check(src, r.next());
+            check(src, r.next());
+            Assert.assertNull(r.next());
+            r.close();
+        }
+    }
+
+    public void testBinaryArchive() throws IOException {
+        File f = File.createTempFile("instances", ".bin");
+        f.deleteOnExit();
+        Instance src = makeInstance();
+        BinaryInstanceWriter w = new BinaryInstanceWriter(f);
+        for (int i = 0; i < 3; i++) {
+            w.write(src);
+        }
+        w.close();
+
+        BinaryInstanceReader r = new BinaryInstanceReader(f);
+        Assert.assertEquals(r.size(), 3);
+        check(src, r.get(2));
+        check(src, r.get(0));
+        r.close();
+    }
+
+    public void testBinaryArchiveWithInvalidInstance() throws IOException {
+        File f = File.createTempFile("instances", ".bin");
+        f.deleteOnExit();
+        Instance src = makeInstance();
+        Instance bad = makeInstance();
+        ManagedElementSet<Node> ns = new SimpleManagedElementSet<Node>();
+        ns.add(new SimpleNode("foo", 1, 1, 1));
+        bad.getVJobs().get(0).addConstraint(new Fence(bad.getConfiguration().getRunnings().clone(), ns));
+        BinaryInstanceWriter w = new BinaryInstanceWriter(f);
+        w.write(src);
+        try {
+            w.write(bad);
+            Assert.fail("The node 'foo' is not in the configuration");
+        } catch (IllegalArgumentException e) {
+            //Expected
+        }
+        w.write(src);
+        w.close();
+
+        BinaryInstanceReader r = new BinaryInstanceReader(f);
+        Assert.assertEquals(r.size(), 2);
+        check(src, r.get(0));
+        check(src, r.get(1));
+        r.close();
+    }
+
+    public void testGenerationListener() throws IOException {
+        Instance src = makeInstance();
+        Configuration cfg = src.getConfiguration();
+        InstanceSpec spec = new InstanceSpec(cfg.getOnlines(), cfg.getOfflines(), src.getVJobs());
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        InstanceWriter w = new InstanceWriter(bout, false);
+        w.generated(new GenerationResult(0, spec, null, new Exception()));
+        w.generated(new GenerationResult(1, spec, cfg, null));
+        w.close();
+
+        InstanceReader r = new InstanceReader(new ByteArrayInputStream(bout.toByteArray()), false);
+        Instance i = r.next();
+        Assert.assertEquals(i.getIndex(), 1);
+        check(src, i);
+        Assert.assertNull(r.next());
+        r.close();
+    }
+
+    public void testBinaryGenerationListener() throws IOException {
+        File f = File.createTempFile("instances", ".bin");
+        f.deleteOnExit();
+        Instance src = makeInstance();
+        Configuration cfg = src.getConfiguration();
+        InstanceSpec spec = new InstanceSpec(cfg.getOnlines(), cfg.getOfflines(), src.getVJobs());
+        BinaryInstanceWriter w = new BinaryInstanceWriter(f);
+        w.generated(new GenerationResult(0, spec, null, new Exception()));
+        w.generated(new GenerationResult(3, spec, cfg, null));
+        w.write(src);
+        w.close();
+        //No second trailer
+        long size = f.length();
+        w.close();
+        Assert.assertEquals(f.length(), size);
+
+        BinaryInstanceReader r = new BinaryInstanceReader(f);
+        Assert.assertEquals(r.size(), 2);
+        Instance i = r.get(0);
+        Assert.assertEquals(i.getIndex(), 3);
+        check(src, i);
+        Assert.assertEquals(r.get(1).getIndex(), -1);
+        r.close();
+        r.close();
+    }
+
+    public void testWriteInvalidInstance() throws IOException {
+        Instance src = makeInstance();
+        ManagedElementSet<Node> ns = new SimpleManagedElementSet<Node>();
+        ns.add(new SimpleNode("foo", 1, 1, 1));
+        src.getVJobs().get(0).addConstraint(new Fence(src.getConfiguration().getRunnings().clone(), ns));
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        InstanceWriter w = new InstanceWriter(bout, false);
+        try {
+            w.write(src);
+            Assert.fail("The node 'foo' is not in the configuration");
+        } catch (IllegalArgumentException e) {
+            //Expected
+        }
+        w.close();
+        Assert.assertEquals(bout.size(), 0);
+    }
+
+    public void testWriteNameWithWhitespace() throws IOException {
+        Instance src = makeInstance();
+        src.getConfiguration().addWaiting(new SimpleVirtualMachine("foo bar", 1, 1, 1));
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        InstanceWriter w = new InstanceWriter(bout, false);
+        try {
+            w.write(src);
+            Assert.fail("'foo bar' cannot be read back");
+        } catch (IllegalArgumentException e) {
+            //Expected
+        }
+        w.close();
+        Assert.assertEquals(bout.size(), 0);
+    }
+
+    public void testReadMalformedInstance() throws IOException {
+        String in = "instance\nnode N1 1 foo 5 on\nend\n";
+        InstanceReader r = new InstanceReader(new ByteArrayInputStream(in.getBytes("UTF-8")), false);
+        try {
+            r.next();
+            Assert.fail("'foo' is not a number");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Line 2:"), e.getMessage());
+        }
+        r.close();
+
+        in = "instance\nvm VM1 1\nend\n";
+        r = new InstanceReader(new ByteArrayInputStream(in.getBytes("UTF-8")), false);
+        try {
+            r.next();
+            Assert.fail("Missing fields");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Line 2:"), e.getMessage());
+        }
+        r.close();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ *         This file is part of Entropy.
+ *
+ *         Entropy is free software: you can redistribute it and/or modify
+ *         it under the terms of the GNU Lesser General Public License as published by
+ *         the Free Software Foundation, either version 3 of the License, or
+ *         (at your option) any later version.
+ *
+ *         Entropy is distributed in the hope that it will be useful,
+ *         but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *         MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *
+ *         GNU Lesser General Public License for more details.
+ *         You should have received a copy of the GNU Lesser General Public License
+ *         along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package btrplace.rpMaker;
+
+import entropy.configuration.*;
+import entropy.plan.Plan;
+import entropy.plan.choco.ChocoCustomRP;
+import entropy.plan.choco.constraint.pack.SatisfyDemandingSlicesHeightsFastBP;
+import entropy.plan.durationEvaluator.MockDurationEvaluator;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+/**
+ * Unit tests for {@link Sweep}.
+ *
+ * @author Fabien Hermenier
+ */
+public class SweepTest {
+
+    private static Sweep makeSweep() {
+        ManagedElementSet<Node> onlines = new SimpleManagedElementSet<Node>();
+        for (int i = 0; i < 10; i++) {
+            onlines.add(new SimpleNode("N" + i, 5, 10, 10));
+        }
+        VJobTemplate tpl = new DefaultVJobTemplate("t");
+        tpl.addVirtualMachine(new SimpleVirtualMachine("VM1", 1, 2, 2));
+        tpl.addVirtualMachine(new SimpleVirtualMachine("VM2", 1, 2, 2));
+        PlanFactory f = new PlanFactory() {
+            @Override
+            public Plan build() {
+                ChocoCustomRP rp = new ChocoCustomRP(new MockDurationEvaluator(1, 1, 1, 1, 1, 1, 1, 1, 1));
+                rp.setPackingConstraintClass(new SatisfyDemandingSlicesHeightsFastBP());
+                return rp;
+            }
+        };
+        Sweep s = new Sweep(tpl, onlines, f);
+        s.setVJobCounts(2, 5);
+        s.setDemandBounds(null, new double[]{0.2, 0.8});
+        s.setFailureRatios(0, 0.2);
+        s.setShuffleDepths(0, 10);
+        return s;
+    }
+
+    @Test
+    public void testGrid() throws InterruptedException {
+        Sweep s = makeSweep();
+        Assert.assertEquals(s.size(), 16);
+        List<Sweep.Cell> cells = s.run(42, 3);
+        Assert.assertEquals(cells.size(), 16);
+        Assert.assertEquals(cells.get(0).getNbVJobs(), 2);
+        Assert.assertNull(cells.get(0).getDemandBounds());
+        Assert.assertEquals(cells.get(15).getNbVJobs(), 5);
+        Assert.assertEquals(cells.get(15).getShuffleDepth(), 10);
+        for (Sweep.Cell c : cells) {
+            Instance in = c.getInstance();
+            Assert.assertNotNull(in, c.toString());
+            Assert.assertEquals(in.getVJobs().size(), c.getNbVJobs());
+            if (c.getFailureRatio() == 0) {
+                Assert.assertEquals(in.getConfiguration().getOfflines().size(), 0);
+                Assert.assertEquals(in.getConfiguration().getRunnings().size(), 2 * c.getNbVJobs());
+            } else {
+                Assert.assertEquals(in.getConfiguration().getOfflines().size(), 2);
+            }
+        }
+        //Only the cells sharing their demand stage share their VMs
+        Assert.assertSame(cells.get(0).getInstance().getVJobs().get(0).getVirtualMachines().get(0),
+                cells.get(1).getInstance().getVJobs().get(0).getVirtualMachines().get(0));
+        Assert.assertNotSame(cells.get(0).getInstance().getConfiguration(), cells.get(1).getInstance().getConfiguration());
+        Assert.assertNotSame(cells.get(0).getInstance().getVJobs().get(0).getVirtualMachines().get(0),
+                cells.get(4).getInstance().getVJobs().get(0).getVirtualMachines().get(0));
+    }
+
+    @Test
+    public void testReproducible() throws InterruptedException {
+        List<Sweep.Cell> cells1 = makeSweep().run(7, 1);
+        List<Sweep.Cell> cells2 = makeSweep().run(7, 4);
+        for (int i = 0; i < cells1.size(); i++) {
+            Configuration cfg1 = cells1.get(i).getInstance().getConfiguration();
+            Configuration cfg2 = cells2.get(i).getInstance().getConfiguration();
+            for (VirtualMachine vm : cfg1.getRunnings()) {
+                VirtualMachine other = cfg2.getAllVirtualMachines().get(vm.getName());
+                Assert.assertEquals(cfg2.getLocation(other).getName(), cfg1.getLocation(vm).getName());
+                Assert.assertEquals(other.getCPUDemand(), vm.getCPUDemand());
+            }
+        }
+    }
+}
@@ -27,6 +27,9 @@ import entropy.vjob.VJob;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author Fabien Hermenier
  */
@@ -82,4 +85,22 @@ public class VJobAltererTest {
         }
 
     }
+
+    @Test
+    public void testBulkOperations() throws Exception {
+        List<VJob> vjobs = new ArrayList<VJob>();
+        for (int i = 0; i < VJobAlterer.PARALLEL_THRESHOLD * 2; i++) {
+            vjobs.add(makeVJob());
+        }
+        int[] sums = VJobAlterer.getResourceSum(vjobs, ResourcePicker.VMRc.cpuConsumption, ResourcePicker.VMRc.cpuDemand);
+        Assert.assertEquals(sums[0], 20 * vjobs.size());
+        Assert.assertEquals(sums[1], 50 * vjobs.size());
+        Assert.assertEquals(VJobAlterer.getCPUDemandRatio(vjobs), 0.5d, 0.0001d);
+
+        Assert.assertEquals(VJobAlterer.setCPUDemandRatio(vjobs, 0.7), 70 * vjobs.size());
+        Assert.assertEquals(VJobAlterer.getCPUDemandRatio(vjobs), 0.7d, 0.0001d);
+        VJobAlterer.setCPUConsumptionToDemand(vjobs);
+        Assert.assertEquals(VJobAlterer.getResourceSum(vjobs, ResourcePicker.VMRc.cpuConsumption)[0], 70 * vjobs.size());
+        Assert.assertEquals(VJobAlterer.setCPUConsumptionRatio(vjobs, 0.2), 20 * vjobs.size());
+    }
 }